@@ -0,0 +1,134 @@
+package com.amandariu.tagger.demo.data.source.local.db;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.demo.data.Tag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the read and write throughput of {@link TagDatabase} opened with several
+ * {@link TagDatabase.Config}s. Results are written to logcat under the {@link #TAG} tag.
+ *
+ * @author Amanda Riu
+ */
+@RunWith(AndroidJUnit4.class)
+public class TagDatabaseConfigBenchmark {
+
+    private static final String TAG = TagDatabaseConfigBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "config-benchmark.db";
+    private static final int TAG_COUNT = 50000;
+    private static final int PAGE_SIZE = 50;
+    private static final int PAGE_READS = 500;
+    private static final String[] WORDS = {"red", "green", "blue", "apple", "apricot",
+            "banana", "cherry", "grape", "lemon", "mango", "orange", "peach", "pear", "plum"};
+
+    /**
+     * What the platform uses when Room opens the database without any tuning.
+     */
+    private static final TagDatabase.Config PLATFORM = new TagDatabase.Config.Builder()
+            .setWriteAheadLogging(false)
+            .setPageCacheKib(2000)
+            .setMmapSizeBytes(0)
+            .setSynchronous(TagDatabase.Config.Synchronous.FULL)
+            .setStatementCacheSize(25)
+            .build();
+
+    private static final TagDatabase.Config[] CONFIGS = {
+            PLATFORM,
+            new TagDatabase.Config.Builder()
+                    .setMmapSizeBytes(0)
+                    .setPageCacheKib(2000)
+                    .setStatementCacheSize(25)
+                    .build(),
+            TagDatabase.Config.DEFAULT,
+            new TagDatabase.Config.Builder().setMmapSizeBytes(0).build(),
+            new TagDatabase.Config.Builder().setPageCacheKib(256).build(),
+            new TagDatabase.Config.Builder()
+                    .setSynchronous(TagDatabase.Config.Synchronous.OFF)
+                    .build(),
+    };
+
+    private Context mContext;
+    private List<ITag> mTags;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mTags = new ArrayList<>(TAG_COUNT);
+        for (int i = 0; i < TAG_COUNT; i++) {
+            String label = WORDS[i % WORDS.length] + " "
+                    + WORDS[(i / WORDS.length) % WORDS.length] + " " + i;
+            mTags.add(new Tag(i, label, "ff668899"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void benchmark_readAndWriteThroughputByConfig() {
+        for (TagDatabase.Config config : CONFIGS) {
+            mContext.deleteDatabase(DATABASE_NAME);
+            TagDatabase db = TagDatabase.build(mContext, DATABASE_NAME, config);
+            try {
+                TagDao dao = db.tagDao();
+
+                long start = System.nanoTime();
+                dao.upsertAll(mTags, TagDao.DEFAULT_UPSERT_CHUNK_SIZE, null);
+                long writeTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int loaded = dao.loadAllTags().size();
+                long loadAllTime = System.nanoTime() - start;
+                assertEquals(TAG_COUNT, loaded);
+
+                Random random = new Random(42);
+                int pageRows = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < PAGE_READS; i++) {
+                    pageRows += dao.loadTagsPage(random.nextInt(TAG_COUNT - PAGE_SIZE),
+                            PAGE_SIZE).size();
+                }
+                long pageTime = System.nanoTime() - start;
+
+                int searchRows = 0;
+                start = System.nanoTime();
+                for (String word : WORDS) {
+                    searchRows += dao.loadTagsContainingPage(TagDao.toContainsPattern(word), 0,
+                            PAGE_SIZE).size();
+                }
+                long searchTime = System.nanoTime() - start;
+
+                Log.i(TAG, config + ": write [" + perSecond(TAG_COUNT, writeTime)
+                        + "] rows/s, load all [" + perSecond(loaded, loadAllTime)
+                        + "] rows/s, random pages [" + perSecond(pageRows, pageTime)
+                        + "] rows/s, search [" + perSecond(searchRows, searchTime)
+                        + "] rows/s");
+            } finally {
+                db.close();
+            }
+        }
+    }
+
+    private static long perSecond(int rows, long nanos) {
+        return rows * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+    }
+}
@@ -0,0 +1,148 @@
+package com.amandariu.tagger.demo.data.source.local.db;
+
+import android.arch.persistence.room.Room;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.demo.data.Tag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares searching {@link TagDatabase} for labels containing a query with filtering every
+ * tag in memory. Results are written to logcat under the {@link #TAG} tag.
+ *
+ * @author Amanda Riu
+ */
+@RunWith(AndroidJUnit4.class)
+public class TagSearchBenchmark {
+
+    private static final String TAG = TagSearchBenchmark.class.getSimpleName();
+
+    private static final int TAG_COUNT = 50000;
+    private static final int PAGE_SIZE = 50;
+    private static final int RUNS = 5;
+    private static final String[] WORDS = {"red", "green", "blue", "apple", "apricot",
+            "banana", "cherry", "grape", "lemon", "mango", "orange", "peach", "pear", "plum"};
+    private static final String[] QUERIES = {"a", "ap", "red ap", "green plum"};
+
+    private TagDatabase mDb;
+    private TagDao mDao;
+
+    @Before
+    public void setUp() {
+        mDb = Room.inMemoryDatabaseBuilder(
+                InstrumentationRegistry.getTargetContext(), TagDatabase.class)
+                .build();
+        mDao = mDb.tagDao();
+
+        List<TagEntity> tags = new ArrayList<>(TAG_COUNT);
+        for (int i = 0; i < TAG_COUNT; i++) {
+            String label = WORDS[i % WORDS.length] + " "
+                    + WORDS[(i / WORDS.length) % WORDS.length] + " " + i;
+            tags.add(new TagEntity(new Tag(i, label, "ff668899")));
+        }
+        mDao.insertAll(tags);
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    @Test
+    public void containsSearch_matchesTheInMemoryFilter() {
+        List<ITag> allTags = TagConverter.toTagList(mDao.loadAllTags());
+        for (String query : new String[]{"ple", "Apple", "ed ap", "an 1", "rry", "%"}) {
+            String pattern = TagDao.toContainsPattern(query);
+            List<ITag> expected = filterInMemory(allTags, query);
+            assertEquals(query, expected.size(), mDao.countTagsContaining(pattern));
+
+            List<TagEntity> page = mDao.loadTagsContainingPage(pattern, 0, PAGE_SIZE);
+            assertEquals(query, Math.min(PAGE_SIZE, expected.size()), page.size());
+            for (TagEntity tag : page) {
+                assertTrue(tag.getLabel(), tag.getLabelKey().contains(query.toLowerCase()));
+            }
+        }
+    }
+
+    @Test
+    public void loadAllTags_isInTheSameOrderAsSortingInMemory() {
+        String[] labels = {"caf\u00e9", "Cafe", "cafe!", "\u00e9clair", "Eclair", "zebra",
+                "\u65e5\u672c", "_underscore", "10 apples", "9 apples"};
+        List<TagEntity> extra = new ArrayList<>();
+        for (int i = 0; i < labels.length; i++) {
+            extra.add(new TagEntity(new Tag(TAG_COUNT + i, labels[i], "ff668899")));
+        }
+        mDao.insertAll(extra);
+
+        List<ITag> fromDb = TagConverter.toTagList(mDao.loadAllTags());
+        List<ITag> sorted = new ArrayList<>(fromDb);
+        Collections.sort(sorted);
+        assertEquals(sorted, fromDb);
+    }
+
+    @Test
+    public void benchmark_containsSearchVersusInMemoryFilter() {
+        //
+        // The in-memory filter needs every tag loaded first.
+        long start = System.nanoTime();
+        List<ITag> allTags = TagConverter.toTagList(mDao.loadAllTags());
+        long loadTime = System.nanoTime() - start;
+        Log.i(TAG, "Loaded [" + allTags.size() + "] tags into memory in ["
+                + TimeUnit.NANOSECONDS.toMillis(loadTime) + "] ms");
+
+        for (String query : QUERIES) {
+            String pattern = TagDao.toContainsPattern(query);
+            long containsTime = Long.MAX_VALUE;
+            long memoryTime = Long.MAX_VALUE;
+            int containsCount = 0;
+            int memoryCount = 0;
+            for (int run = 0; run < RUNS; run++) {
+                start = System.nanoTime();
+                containsCount = mDao.countTagsContaining(pattern);
+                mDao.loadTagsContainingPage(pattern, 0, PAGE_SIZE);
+                containsTime = Math.min(containsTime, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                memoryCount = filterInMemory(allTags, query).size();
+                memoryTime = Math.min(memoryTime, System.nanoTime() - start);
+            }
+            Log.i(TAG, "Query [" + query + "]: label_key contains [" + containsCount + "] tags in ["
+                    + TimeUnit.NANOSECONDS.toMicros(containsTime) + "] us, in memory ["
+                    + memoryCount + "] tags in ["
+                    + TimeUnit.NANOSECONDS.toMicros(memoryTime) + "] us");
+            //
+            // The picker pages with the contains search, so it must find exactly what the
+            // in-memory filter finds.
+            assertEquals(query, memoryCount, containsCount);
+        }
+    }
+
+    /**
+     * The same label contains query filter the tagger uses for lists held in memory.
+     */
+    private static List<ITag> filterInMemory(List<ITag> tags, String query) {
+        String q = query.toLowerCase();
+        List<ITag> results = new ArrayList<>();
+        for (ITag tag : tags) {
+            if (tag.getLabel().toLowerCase().contains(q)) {
+                results.add(tag);
+            }
+        }
+        return results;
+    }
+}
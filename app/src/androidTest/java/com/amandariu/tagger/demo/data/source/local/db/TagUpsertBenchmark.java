@@ -0,0 +1,113 @@
+package com.amandariu.tagger.demo.data.source.local.db;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.demo.data.Tag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the rows per second {@link TagDao#upsertAll} writes at several chunk sizes, into a
+ * database on disk so the cost of each commit is included. Results are written to logcat
+ * under the {@link #TAG} tag.
+ *
+ * @author Amanda Riu
+ */
+@RunWith(AndroidJUnit4.class)
+public class TagUpsertBenchmark {
+
+    private static final String TAG = TagUpsertBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "upsert-benchmark.db";
+    private static final int TAG_COUNT = 100000;
+    private static final int[] CHUNK_SIZES = {100, 1000, 10000, TAG_COUNT};
+
+    private Context mContext;
+    private TagDatabase mDb;
+    private TagDao mDao;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        openDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void upsert_updatesChangedTags() {
+        List<ITag> tags = new ArrayList<>();
+        tags.add(new Tag(1, "Red Apple", "ffff0000"));
+        tags.add(new Tag(2, "Green Pear", "ff00ff00"));
+        assertEquals(2, mDao.upsertAll(tags, 1, null));
+
+        tags.set(0, new Tag(1, "Yellow Banana", "ffffff00"));
+        tags.add(new Tag(3, "Blue Plum", "ff0000ff"));
+        //
+        // Only the changed and the new tag are written.
+        assertEquals(2, mDao.upsertAll(tags, 2, null));
+
+        assertEquals(3, mDao.countAllTags());
+        assertEquals(0, mDao.countTagsContaining(TagDao.toContainsPattern("apple")));
+        List<TagEntity> matches =
+                mDao.loadTagsContainingPage(TagDao.toContainsPattern("banana"), 0, 10);
+        assertEquals(1, matches.size());
+        assertEquals("ffffff00", matches.get(0).getColor());
+    }
+
+    @Test
+    public void benchmark_rowsPerSecondByChunkSize() {
+        List<ITag> tags = new ArrayList<>(TAG_COUNT);
+        List<ITag> changedTags = new ArrayList<>(TAG_COUNT);
+        for (int i = 0; i < TAG_COUNT; i++) {
+            tags.add(new Tag(i, "Tag " + i, "ff668899"));
+            changedTags.add(new Tag(i, "Changed tag " + i, "ff998866"));
+        }
+        for (int chunkSize : CHUNK_SIZES) {
+            mDb.close();
+            mContext.deleteDatabase(DATABASE_NAME);
+            openDatabase();
+
+            long insertTime = upsert(tags, chunkSize);
+            long updateTime = upsert(changedTags, chunkSize);
+            long unchangedTime = upsert(changedTags, chunkSize);
+            Log.i(TAG, "Chunk size [" + chunkSize + "]: insert [" + rowsPerSecond(insertTime)
+                    + "] rows/s, update [" + rowsPerSecond(updateTime)
+                    + "] rows/s, unchanged [" + rowsPerSecond(unchangedTime) + "] rows/s");
+            assertEquals(TAG_COUNT, mDao.countAllTags());
+        }
+    }
+
+    private void openDatabase() {
+        mDb = Room.databaseBuilder(mContext, TagDatabase.class, DATABASE_NAME).build();
+        mDao = mDb.tagDao();
+    }
+
+    private long upsert(List<ITag> tags, int chunkSize) {
+        long start = System.nanoTime();
+        mDao.upsertAll(tags, chunkSize, null);
+        return System.nanoTime() - start;
+    }
+
+    private static long rowsPerSecond(long nanos) {
+        return TAG_COUNT * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+    }
+}
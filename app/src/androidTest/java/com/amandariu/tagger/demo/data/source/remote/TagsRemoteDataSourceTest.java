@@ -0,0 +1,151 @@
+package com.amandariu.tagger.demo.data.source.remote;
+
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.demo.data.source.ISourceBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies {@link TagsRemoteDataSource} revalidates its cached copy of the tags against a
+ * {@link MockWebServer} and reports unchanged tags without parsing them.
+ *
+ * @author Amanda Riu
+ */
+@RunWith(AndroidJUnit4.class)
+public class TagsRemoteDataSourceTest {
+
+    private static final String ETAG = "\"tags-v1\"";
+    private static final String TAGS_JSON = "[{\"id\":1,\"tag\":\"apple\",\"color\":\"#ff0000\"},"
+            + "{\"id\":2,\"tag\":\"banana\",\"color\":\"#ffff00\"}]";
+
+    private MockWebServer mServer;
+    private File mCacheDir;
+    private TagsRemoteDataSource mDataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+        mCacheDir = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "test-http-" + System.nanoTime());
+        mDataSource = new TagsRemoteDataSource(mServer.url("/").toString(), mCacheDir);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDataSource.shutdown();
+        mServer.shutdown();
+        deleteRecursively(mCacheDir);
+    }
+
+    @Test
+    public void getTags_unchangedTags_revalidatesAndSkipsParse() throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setHeader("ETag", ETAG)
+                .setHeader("Cache-Control", "no-cache")
+                .setBody(TAGS_JSON));
+        mServer.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", ETAG));
+
+        RecordingCallback first = new RecordingCallback();
+        mDataSource.getTags(first);
+        first.await();
+        assertEquals(2, first.mTags.size());
+        assertEquals("apple", first.mTags.get(0).getLabel());
+        assertNull(mServer.takeRequest().getHeader("If-None-Match"));
+
+        RecordingCallback second = new RecordingCallback();
+        mDataSource.getTags(second);
+        second.await();
+        assertTrue(second.mNotModified);
+        assertNull(second.mTags);
+        RecordedRequest revalidation = mServer.takeRequest();
+        assertEquals(ETAG, revalidation.getHeader("If-None-Match"));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void getTags_changedTags_deliversNewTags() throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setHeader("ETag", ETAG)
+                .setHeader("Cache-Control", "no-cache")
+                .setBody(TAGS_JSON));
+        mServer.enqueue(new MockResponse()
+                .setHeader("ETag", "\"tags-v2\"")
+                .setHeader("Cache-Control", "no-cache")
+                .setBody("[{\"id\":3,\"tag\":\"cherry\",\"color\":\"#aa0000\"}]"));
+
+        RecordingCallback first = new RecordingCallback();
+        mDataSource.getTags(first);
+        first.await();
+
+        RecordingCallback second = new RecordingCallback();
+        mDataSource.getTags(second);
+        second.await();
+        assertFalse(second.mNotModified);
+        assertEquals(1, second.mTags.size());
+        assertEquals("cherry", second.mTags.get(0).getLabel());
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private static class RecordingCallback implements ISourceBase.IConditionalLoadTagsCallback {
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        volatile List<? extends ITag> mTags;
+        volatile boolean mNotModified;
+        volatile String mError;
+
+        @Override
+        public void onTagsLoaded(List<? extends ITag> tags) {
+            mTags = tags;
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onDataNotAvailable(@NonNull String msg) {
+            mError = msg;
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onTagsNotModified() {
+            mNotModified = true;
+            mLatch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Timed out waiting for the remote data source",
+                    mLatch.await(10, TimeUnit.SECONDS));
+            assertNull(mError);
+        }
+    }
+}
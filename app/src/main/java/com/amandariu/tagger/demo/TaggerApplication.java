@@ -3,18 +3,48 @@ package com.amandariu.tagger.demo;
 import android.app.Application;
 import android.os.Build;
 import android.os.StrictMode;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
 
 import com.amandariu.tagger.BuildConfig;
+import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.ITagPageSource;
+import com.amandariu.tagger.demo.data.source.TagsRepository;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import com.squareup.leakcanary.LeakCanary;
 import com.squareup.leakcanary.RefWatcher;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
 /**
  * @author amandariu (11/5/17)
  */
-public class TaggerApplication extends Application {
+public class TaggerApplication extends Application implements ITagPageSource.Provider {
+
+    private static final String TAG = TaggerApplication.class.getSimpleName();
+
+    /**
+     * Creates and warms up the tags repository off the main thread.
+     */
+    private static final Executor sInitExecutor = Executors.newSingleThreadExecutor();
 
     private static TaggerApplication sInstance;
     private RefWatcher mRefWatcher;
+    private long mStartTime;
+
+    /**
+     * Completes once the tags repository is created and its data sources are open. Guarded
+     * by this.
+     */
+    private ListenableFuture<TagsRepository> mTagsRepository;
 
     public static TaggerApplication getInstance() {
         return sInstance;
@@ -27,6 +57,7 @@ public class TaggerApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        mStartTime = SystemClock.elapsedRealtime();
 
         sInstance = (TaggerApplication) getApplicationContext();
         //
@@ -68,5 +99,123 @@ public class TaggerApplication extends Application {
                     vmBuilder.build()
             );
         }
+        //
+        // Open the database and the HTTP cache while the first activity is being created,
+        // instead of when it first asks for tags.
+        getTagsRepository();
+    }
+
+    /**
+     * @return The time since the application was created, in milliseconds.
+     */
+    public long getTimeSinceStart() {
+        return SystemClock.elapsedRealtime() - mStartTime;
+    }
+
+    /**
+     * Get the tags repository, creating it on a background thread if it doesn't exist or has
+     * been shut down.
+     * @return A future that completes once the repository is ready to use.
+     */
+    @NonNull
+    public synchronized ListenableFuture<TagsRepository> getTagsRepository() {
+        if (mTagsRepository == null || isShutDown(mTagsRepository)) {
+            mTagsRepository = initTagsRepository();
+        }
+        return mTagsRepository;
+    }
+
+    private ListenableFuture<TagsRepository> initTagsRepository() {
+        ListenableFutureTask<TagsRepository> task = ListenableFutureTask.create(
+                new Callable<TagsRepository>() {
+                    @Override
+                    public TagsRepository call() throws Exception {
+                        long startTime = SystemClock.elapsedRealtime();
+                        TagsRepository repo = Injection.provideTagsRepository(
+                                TaggerApplication.this);
+                        repo.warmUp();
+                        Log.d(TAG, "Tags repository ready in ["
+                                + (SystemClock.elapsedRealtime() - startTime) + "] ms, ["
+                                + getTimeSinceStart() + "] ms after application start");
+                        return repo;
+                    }
+                });
+        sInitExecutor.execute(task);
+        return task;
+    }
+
+    /**
+     * @return True if the future failed or its repository has since been shut down.
+     */
+    private static boolean isShutDown(ListenableFuture<TagsRepository> future) {
+        if (!future.isDone()) {
+            return false;
+        }
+        try {
+            return future.get() != TagsRepository.getActiveInstance();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Supplies the tag picker with the locally stored tags, one page at a time. Never blocks:
+     * if the repository is still opening, the picker gets a source that waits for it on the
+     * picker's background thread.
+     * @return The page source of the tags repository.
+     */
+    @Nullable
+    @Override
+    public ITagPageSource getTagPageSource() {
+        TagsRepository repo = TagsRepository.getActiveInstance();
+        if (repo != null) {
+            return repo.getTagPageSource();
+        }
+        return new PendingTagPageSource(getTagsRepository());
+    }
+
+    /**
+     * Pages through the tags of a repository that may still be opening. The picker only
+     * calls an {@link ITagPageSource} on a background thread, so it is safe to wait there.
+     */
+    private static class PendingTagPageSource implements ITagPageSource {
+
+        private final ListenableFuture<TagsRepository> mRepo;
+
+        PendingTagPageSource(@NonNull ListenableFuture<TagsRepository> repo) {
+            mRepo = repo;
+        }
+
+        @Override
+        public int countTags(@NonNull String query) {
+            return getSource().countTags(query);
+        }
+
+        @NonNull
+        @Override
+        public List<ITag> loadTags(@NonNull String query, int offset, int limit) {
+            return getSource().loadTags(query, offset, limit);
+        }
+
+        @NonNull
+        @Override
+        public List<ITag> loadTagsById(@NonNull int[] ids) {
+            return getSource().loadTagsById(ids);
+        }
+
+        /**
+         * Wait for the repository. Only called on the picker's background thread.
+         */
+        private ITagPageSource getSource() {
+            ITagPageSource source = Futures.getUnchecked(mRepo).getTagPageSource();
+            if (source == null) {
+                throw new IllegalStateException(
+                        "The tags repository can't be read a page at a time");
+            }
+            return source;
+        }
     }
 }
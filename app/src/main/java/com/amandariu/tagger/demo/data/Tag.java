@@ -3,8 +3,10 @@ package com.amandariu.tagger.demo.data;
 
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.annotation.Nullable;
 
 import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.UtilsKt;
 import com.bluelinelabs.logansquare.annotation.JsonField;
 import com.bluelinelabs.logansquare.annotation.JsonObject;
 
@@ -20,6 +22,11 @@ import com.bluelinelabs.logansquare.annotation.JsonObject;
 @JsonObject
 public class Tag extends ITag implements Parcelable {
 
+    /**
+     * Used for tags whose color string can't be parsed.
+     */
+    public static final int UNKNOWN_COLOR = 0xff666666;
+
     @JsonField(name = "id")
     int mId;
 
@@ -31,6 +38,12 @@ public class Tag extends ITag implements Parcelable {
 
     transient boolean mUserAdded = false;
 
+    /**
+     * The color already parsed from {@link #mColor}, valid if {@link #mHasColorInt} is set.
+     */
+    transient int mColorInt;
+    transient boolean mHasColorInt = false;
+
     public Tag() {
         // empty constructor required by LoganSquare
     }
@@ -41,10 +54,21 @@ public class Tag extends ITag implements Parcelable {
         this.mColor = color;
     }
 
+    /**
+     * @param colorInt The color already parsed from the color string.
+     */
+    public Tag(int id, String label, String color, int colorInt) {
+        this(id, label, color);
+        this.mColorInt = colorInt;
+        this.mHasColorInt = true;
+    }
+
     private Tag(Parcel in) {
         mId = in.readInt();
         mLabel = in.readString();
         mColor = in.readString();
+        mHasColorInt = in.readByte() != 0;
+        mColorInt = in.readInt();
     }
 
     @Override
@@ -62,6 +86,39 @@ public class Tag extends ITag implements Parcelable {
         return mColor;
     }
 
+    /**
+     * Parse the color now, so it isn't parsed when the tag is first displayed. Meant to be
+     * called on the thread that loaded the tag.
+     */
+    public void preparseColor() {
+        mColorInt = parseColor(mColor);
+        mHasColorInt = true;
+    }
+
+    /**
+     * Parse a color string.
+     * @param color The color, with or without a leading '#'.
+     * @return The color int, or {@link #UNKNOWN_COLOR} if the color can't be parsed.
+     */
+    public static int parseColor(@Nullable String color) {
+        if (color == null) {
+            return UNKNOWN_COLOR;
+        }
+        try {
+            return UtilsKt.getColorInt(color);
+        } catch (IllegalArgumentException e) {
+            return UNKNOWN_COLOR;
+        }
+    }
+
+    /**
+     * @return The color loaded with the tag if there was one, else the parsed color string.
+     */
+    @Override
+    public int getColorInt() {
+        return mHasColorInt ? mColorInt : super.getColorInt();
+    }
+
     public static final Creator<Tag> CREATOR = new Creator<Tag>() {
         @Override
         public Tag createFromParcel(Parcel in) {
@@ -101,5 +158,7 @@ public class Tag extends ITag implements Parcelable {
         dest.writeInt(mId);
         dest.writeString(mLabel);
         dest.writeString(mColor);
+        dest.writeByte((byte) (mHasColorInt ? 1 : 0));
+        dest.writeInt(mColorInt);
     }
 }
@@ -1,6 +1,7 @@
 package com.amandariu.tagger.demo.data.source;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
 import com.amandariu.tagger.ITag;
 import java.util.List;
 
@@ -24,12 +25,67 @@ public interface ISourceBase {
         void onDataNotAvailable(@NonNull String msg);
     }
 
+    /**
+     * A callback for callers that already hold the last tags loaded. Data sources that can
+     * tell their tags haven't changed since then call {@link #onTagsNotModified()} instead of
+     * loading and parsing the tags again.
+     */
+    interface IConditionalLoadTagsCallback extends ILoadTagsCallback {
+        /**
+         * The tags are unchanged since they were last loaded.
+         */
+        void onTagsNotModified();
+    }
+
+    /**
+     * A callback for receiving tags a batch at a time while they are still being loaded, so
+     * the whole list never has to be held at once. Data sources that can stream call
+     * {@link #onTagsBatch(List, Runnable)} for each batch in order, then
+     * {@link #onTagsComplete()}, instead of {@link #onTagsLoaded(List)}.
+     */
+    interface IBatchLoadTagsCallback extends ILoadTagsCallback {
+        /**
+         * The next batch of tags has been loaded.
+         * @param batch The tags in this batch.
+         * @param done Run once the batch has been handled, for example written to a database,
+         *             from any thread. The data source stops loading while a few batches are
+         *             not done, so a slow callback holds back loading rather than letting
+         *             batches pile up in memory.
+         */
+        void onTagsBatch(@NonNull List<? extends ITag> batch, @NonNull Runnable done);
+
+        /**
+         * Every batch has been delivered.
+         */
+        void onTagsComplete();
+    }
+
+    /**
+     * A callback for callers that want to show tags while a sync is still in progress. Each
+     * batch of newly added tags is sent to {@link #onTagsAdded(List)} as it is synced, then
+     * the complete list is sent to {@link #onTagsLoaded(List)} once.
+     */
+    interface IIncrementalLoadTagsCallback extends ILoadTagsCallback {
+        /**
+         * Tags were added by a sync that is still in progress.
+         * @param added Only the tags added since the last call, not the tags sent before.
+         */
+        void onTagsAdded(@NonNull List<? extends ITag> added);
+    }
+
     /**
      * Load tags from one or more datasources.
      * @param callback The callback to send the loaded tags to.
      */
     void getTags(@NonNull ILoadTagsCallback callback);
 
+    /**
+     * Do any slow setup now, such as opening files, rather than on the first request. Must
+     * not be called on the main thread.
+     */
+    @WorkerThread
+    void warmUp();
+
     /**
      * Gracefully shutdown and release references.
      */
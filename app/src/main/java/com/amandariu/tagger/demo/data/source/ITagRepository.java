@@ -1,5 +1,8 @@
 package com.amandariu.tagger.demo.data.source;
 
+import android.support.annotation.Nullable;
+
+import com.amandariu.tagger.ITagPageSource;
 
 /**
  * Interface for working with the Repository for this application.
@@ -8,15 +11,25 @@ package com.amandariu.tagger.demo.data.source;
  */
 public interface ITagRepository extends ISourceBase {
     /**
-     * Instructs the Repository to purge it's in-memory cache and refresh
-     * the tags.
+     * Instructs the Repository to treat its cached tags as stale, so they are
+     * revalidated the next time they are requested.
      */
     void refreshTags();
 
+    /**
+     * Set how long cached tags are trusted.
+     * @param ttlMs Cached tags younger than this are returned without checking the remote
+     *              data source.
+     * @param maxStalenessMs Cached tags older than this are not returned while the remote
+     *                       data source is reachable.
+     */
+    void setCachePolicy(long ttlMs, long maxStalenessMs);
+
     /**
      * Fetch tags from the remote api data source. If tags are successfully fetched, the
      * cache will be updated, as well as the local data source. The provided callback will be
-     * notified of the results.
+     * notified of the results. An {@link IIncrementalLoadTagsCallback} is also sent the tags
+     * added while the sync is in progress.
      * @param callback The callback to send the results.
      */
     void getTagsFromRemoteDataSource(ILoadTagsCallback callback);
@@ -27,4 +40,17 @@ public interface ITagRepository extends ISourceBase {
      * @param callback The callback to send the results.
      */
     void getTagsFromLocalDataSource(ILoadTagsCallback callback);
+
+    /**
+     * @return The source for reading the locally stored tags a page at a time, or null if
+     * the local data source does not support paging.
+     */
+    @Nullable
+    ITagPageSource getTagPageSource();
+
+    /**
+     * @return True while tags are still being written to the local data source, in which
+     * case pages read from it may be incomplete.
+     */
+    boolean hasPendingSaves();
 }
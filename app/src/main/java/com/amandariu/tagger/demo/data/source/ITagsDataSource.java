@@ -15,4 +15,11 @@ public interface ITagsDataSource extends ISourceBase {
     }
 
     void saveTags(@NonNull List<? extends ITag> tags, @NonNull ISaveTagsCallback callback);
+
+    /**
+     * Apply the added, changed and deleted tags from a sync.
+     * @param delta The changes to apply.
+     * @param callback The callback to notify of result.
+     */
+    void applyDelta(@NonNull TagsDelta delta, @NonNull ISaveTagsCallback callback);
 }
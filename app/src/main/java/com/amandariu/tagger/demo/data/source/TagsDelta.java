@@ -0,0 +1,165 @@
+package com.amandariu.tagger.demo.data.source;
+
+import android.support.annotation.NonNull;
+
+import com.amandariu.tagger.ITag;
+import com.google.common.base.Objects;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The changes needed to bring a set of tags up to date with a newer copy: the tags that were
+ * added, the tags whose label or color changed, and the ids of the tags that were deleted.
+ *
+ * @author Amanda Riu
+ */
+public final class TagsDelta {
+
+    private final List<ITag> mAdded;
+    private final List<ITag> mChanged;
+    private final int[] mDeletedIds;
+
+    private TagsDelta(@NonNull List<ITag> added,
+                      @NonNull List<ITag> changed,
+                      @NonNull int[] deletedIds) {
+        mAdded = Collections.unmodifiableList(added);
+        mChanged = Collections.unmodifiableList(changed);
+        mDeletedIds = deletedIds;
+    }
+
+    /**
+     * Compare the current tags with a newer copy.
+     *
+     * @param current The current tags, keyed by id.
+     * @param incoming The complete, newer list of tags. If an id appears more than once, the
+     *                 last tag with that id wins.
+     * @return The changes needed to turn current into incoming.
+     */
+    @NonNull
+    public static TagsDelta compute(@NonNull Map<Integer, ? extends ITag> current,
+                                    @NonNull List<? extends ITag> incoming) {
+        List<ITag> added = new ArrayList<>();
+        List<ITag> changed = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>(incoming.size() * 2);
+        addedAndChanged(current, incoming, seen, added, changed);
+
+        int[] deletedIds = new int[current.size() - (seen.size() - added.size())];
+        int deleted = 0;
+        for (Integer id : current.keySet()) {
+            if (!seen.contains(id)) {
+                deletedIds[deleted++] = id;
+            }
+        }
+        return new TagsDelta(added, changed, deletedIds);
+    }
+
+    /**
+     * Compare the current tags with one batch of a newer copy that is arriving in parts.
+     * Deletions can't be known until every batch has arrived, so none are reported; use
+     * {@link #deleted(Collection)} once the last batch is in.
+     *
+     * @param current The current tags, keyed by id.
+     * @param batch Part of the newer list of tags.
+     * @return The tags in the batch that were added or changed.
+     */
+    @NonNull
+    public static TagsDelta computeBatch(@NonNull Map<Integer, ? extends ITag> current,
+                                         @NonNull List<? extends ITag> batch) {
+        List<ITag> added = new ArrayList<>();
+        List<ITag> changed = new ArrayList<>();
+        addedAndChanged(current, batch, new HashSet<Integer>(batch.size() * 2), added, changed);
+        return new TagsDelta(added, changed, new int[0]);
+    }
+
+    /**
+     * @param ids The ids of the deleted tags.
+     * @return A delta that only deletes tags.
+     */
+    @NonNull
+    public static TagsDelta deleted(@NonNull Collection<Integer> ids) {
+        int[] deletedIds = new int[ids.size()];
+        int i = 0;
+        for (Integer id : ids) {
+            deletedIds[i++] = id;
+        }
+        return new TagsDelta(Collections.<ITag>emptyList(), Collections.<ITag>emptyList(),
+                deletedIds);
+    }
+
+    private static void addedAndChanged(@NonNull Map<Integer, ? extends ITag> current,
+                                        @NonNull List<? extends ITag> incoming,
+                                        @NonNull Set<Integer> seen,
+                                        @NonNull List<ITag> added,
+                                        @NonNull List<ITag> changed) {
+        //
+        // Walk backwards so the last copy of a duplicated id is the one kept.
+        for (int i = incoming.size() - 1; i >= 0; i--) {
+            ITag tag = incoming.get(i);
+            if (!seen.add(tag.getId())) {
+                continue;
+            }
+            ITag old = current.get(tag.getId());
+            if (old == null) {
+                added.add(tag);
+            } else if (!sameContents(old, tag)) {
+                changed.add(tag);
+            }
+        }
+        Collections.reverse(added);
+        Collections.reverse(changed);
+    }
+
+    private static boolean sameContents(@NonNull ITag a, @NonNull ITag b) {
+        return Objects.equal(a.getLabel(), b.getLabel()) && Objects.equal(a.getColor(), b.getColor());
+    }
+
+    /**
+     * @return The tags that are new.
+     */
+    @NonNull
+    public List<ITag> getAdded() {
+        return mAdded;
+    }
+
+    /**
+     * @return The tags whose label or color changed.
+     */
+    @NonNull
+    public List<ITag> getChanged() {
+        return mChanged;
+    }
+
+    /**
+     * @return The ids of the tags that no longer exist.
+     */
+    @NonNull
+    public int[] getDeletedIds() {
+        return mDeletedIds;
+    }
+
+    /**
+     * @return The total number of added, changed and deleted tags.
+     */
+    public int size() {
+        return mAdded.size() + mChanged.size() + mDeletedIds.length;
+    }
+
+    /**
+     * @return True if there are no changes.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TagsDelta[added=" + mAdded.size() + ", changed=" + mChanged.size()
+                + ", deleted=" + mDeletedIds.length + "]";
+    }
+}
@@ -1,14 +1,26 @@
 package com.amandariu.tagger.demo.data.source;
 
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.ITagPageSource;
 import com.amandariu.tagger.demo.common.NetworkUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -20,22 +32,97 @@ public class TagsRepository implements ITagRepository {
 
     private static final String TAG = TagsRepository.class.getSimpleName();
 
-    private static TagsRepository sInstance = null;
+    /**
+     * Cached tags younger than this are returned without checking the remote data source.
+     */
+    public static final long DEFAULT_CACHE_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Cached tags older than this are not returned while the remote data source is reachable.
+     */
+    public static final long DEFAULT_MAX_STALENESS_MS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The value of {@link #mCacheValidatedAt} when the cache has not been checked against the
+     * remote data source.
+     */
+    private static final long NOT_VALIDATED = -1;
+
+    private static volatile TagsRepository sInstance = null;
     private ITagsDataSource mTagsRemoteDataSource;
     private ITagsDataSource mTagsLocalDataSource;
-    private boolean mIsFetchingTags = false;
 
+    /**
+     * Guards the cache and the in-flight fetches. Callers may ask for tags from any thread,
+     * and the data sources call back on their own threads. Callbacks are never invoked while
+     * holding this lock.
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * The fetch from the remote data source in progress, or null if there is none.
+     */
+    private FetchRequest mRemoteFetch;
+
+    /**
+     * The fetch from the local data source in progress, or null if there is none.
+     */
+    private FetchRequest mLocalFetch;
+
+
+    /**
+     * The cached tags keyed by id, in the order they were loaded. This variable has package
+     * local visibility so it can be accessed from tests.
+     */
+    private Map<Integer, ITag> mCachedTags;
+
+    /**
+     * Read-only snapshot of {@link #mCachedTags} handed to callers. Rebuilt only after the
+     * cache changes.
+     */
+    private List<ITag> mCachedTagList;
+
+    /**
+     * When the cache was last confirmed to match the remote data source, in
+     * {@link SystemClock#elapsedRealtime()} milliseconds, or {@link #NOT_VALIDATED}. Tags loaded
+     * from the local data source are never validated, since there is no telling how old they
+     * are.
+     */
+    private long mCacheValidatedAt = NOT_VALIDATED;
+
+    private long mCacheTtlMs = DEFAULT_CACHE_TTL_MS;
+    private long mMaxStalenessMs = DEFAULT_MAX_STALENESS_MS;
+
+    /**
+     * The number of saves to the local data source that have not finished yet.
+     */
+    private final AtomicInteger mPendingSaves = new AtomicInteger();
 
     /**
-     * This variable has package local visibility so it can be accessed from tests.
+     * Held here since the local data source only keeps a weak reference to it.
      */
-    private List<ITag> mCachedTags;
+    private final ITagsDataSource.ISaveTagsCallback mSaveTagsCallback =
+            new ITagsDataSource.ISaveTagsCallback() {
+                @Override
+                public void onTagsSavedSuccess() {
+                    mPendingSaves.decrementAndGet();
+                    Log.d(TAG, "Tags successfully saved to the local database");
+                }
+
+                @Override
+                public void onTagsSavedError(Exception e) {
+                    mPendingSaves.decrementAndGet();
+                    Log.e(TAG, "Error saving tags to the local database", e);
+                }
+            };
 
     /**
-     * Marks the cache as invalid, to force an update the next time data is requested. This
-     * variable has package local visibility so it can be accessed from tests.
+     * Save callbacks waiting for their write to finish. The local data source only keeps a
+     * weak reference to them.
      */
-    private boolean mCacheIsDirty = false;
+    private final Set<ITagsDataSource.ISaveTagsCallback> mBatchSaveCallbacks =
+            Collections.newSetFromMap(
+                    new ConcurrentHashMap<ITagsDataSource.ISaveTagsCallback, Boolean>());
 
     /**
      * Singleton class. Prevent remote instantiation.
@@ -54,14 +141,23 @@ public class TagsRepository implements ITagRepository {
      * @param remoteDatasource The remote data source.
      * @return The {@link TagsRepository} instance.
      */
-    public static TagsRepository getInstance(@NonNull ITagsDataSource remoteDatasource,
-                                             @NonNull ITagsDataSource localDatasource) {
+    public static synchronized TagsRepository getInstance(
+            @NonNull ITagsDataSource remoteDatasource,
+            @NonNull ITagsDataSource localDatasource) {
         if (sInstance == null) {
             sInstance = new TagsRepository(remoteDatasource, localDatasource);
         }
         return sInstance;
     }
 
+    /**
+     * @return The existing instance of this Singleton, or null if it hasn't been created.
+     */
+    @Nullable
+    public static TagsRepository getActiveInstance() {
+        return sInstance;
+    }
+
 
     /**
      * Shut down this repository and all attached datasources.
@@ -78,145 +174,600 @@ public class TagsRepository implements ITagRepository {
             mTagsRemoteDataSource.shutdown();
             mTagsRemoteDataSource = null;
         }
-        sInstance = null;
+        mBatchSaveCallbacks.clear();
+        synchronized (TagsRepository.class) {
+            if (sInstance == this) {
+                sInstance = null;
+            }
+        }
     }
 
 
     /**
-     * Load tags from cache, local or remote data sources, which ever is available first.
+     * Open the local database and the remote data source's HTTP cache now, so the first
+     * request for tags doesn't wait on them. Must not be called on the main thread.
+     */
+    @Override
+    public void warmUp() {
+        long startTime = SystemClock.elapsedRealtime();
+        ITagsDataSource local = mTagsLocalDataSource;
+        if (local != null) {
+            local.warmUp();
+        }
+        ITagsDataSource remote = mTagsRemoteDataSource;
+        if (remote != null) {
+            remote.warmUp();
+        }
+        Log.d(TAG, "Total time to warm up the data sources ["
+                + (SystemClock.elapsedRealtime() - startTime) + "] ms");
+    }
+
+
+    /**
+     * Load tags using a stale-while-revalidate policy. Cached or locally stored tags are
+     * returned right away, then checked against the remote data source in the background.
+     * The callback is only called a second time if the remote tags differ.
+     * <ul>
+     *     <li>Cached tags younger than the TTL are returned without checking.</li>
+     *     <li>Cached tags older than the max staleness are not returned while the remote data
+     *     source is reachable. The callback waits for the remote tags instead.</li>
+     *     <li>Without a network connection, whatever tags are cached or stored locally are
+     *     returned.</li>
+     * </ul>
+     * <p>
+     *     Note: {@link ILoadTagsCallback#onDataNotAvailable(String)} is fired only if no tags
+     *     could be returned at all.
+     * </p>
      * <p>
-     *     Note: {@link ILoadTagsCallback#onDataNotAvailable(String)} is fired if all data sources
-     *     fail to get the data.
+     *     If tags are already being fetched, the callback joins that fetch and receives its
+     *     results rather than starting another one.
      * </p>
      *
      * @param callback The callback to send the loaded tags to.
      */
     @Override
     public void getTags(@NonNull ILoadTagsCallback callback) {
+        checkNotNull(callback);
 
-        if (mIsFetchingTags) {
-            Log.w(TAG, "TagsRepository is already fetching tags...do nothing.");
-            return; // already actively pulling tags.
+        boolean connected = NetworkUtils.isNetworkConnected();
+        boolean revalidate = true;
+        List<ITag> cachedTags = null;
+        synchronized (mLock) {
+            if (mCachedTags != null && !mCachedTags.isEmpty()) {
+                long age = mCacheValidatedAt == NOT_VALIDATED
+                        ? NOT_VALIDATED
+                        : SystemClock.elapsedRealtime() - mCacheValidatedAt;
+                if (age != NOT_VALIDATED && age < mCacheTtlMs) {
+                    cachedTags = getCachedTagList();
+                    revalidate = false;
+                } else if (!connected || age < mMaxStalenessMs) {
+                    cachedTags = getCachedTagList();
+                }
+            }
         }
-
-        checkNotNull(callback);
-        if (!mCacheIsDirty && (mCachedTags != null && mCachedTags.size() > 0)) {
+        if (cachedTags != null) {
             //
             // Return cached tags
             Log.d(TAG, "Returning tags from cache");
-            mIsFetchingTags = false;
-            callback.onTagsLoaded(mCachedTags);
-        } else {
+            callback.onTagsLoaded(cachedTags);
+        }
+        if (!revalidate) {
+            return;
+        }
+        if (connected) {
             //
-            // If network connected, pull the tags from the remote api to 
-            // refresh the database. 
-            if (NetworkUtils.isNetworkConnected()) {
-                //
-                // Grab tags from remote api.
-                Log.d(TAG, "Fetching tags from the remote API");
-                getTagsFromRemoteDataSource(callback);
-            } else {
-                //
-                // Load tags from the database
-                Log.d(TAG, "Device not connected, loading tags from database");
-                getTagsFromLocalDataSource(callback);
-            }
+            // Pull the tags from the remote api to refresh the cache and the database. If
+            // the cache is empty, the database is read first and its tags returned while
+            // the remote tags download.
+            Log.d(TAG, cachedTags != null
+                    ? "Revalidating cached tags against the remote API"
+                    : "Fetching tags from the remote API");
+            getTagsFromRemoteDataSource(new UpdateIfChangedCallback(callback, cachedTags));
+        } else if (cachedTags == null) {
+            //
+            // Load tags from the database
+            Log.d(TAG, "Device not connected, loading tags from database");
+            getTagsFromLocalDataSource(callback);
         }
     }
 
 
     /**
-     * Set the dirty bit to true so the cached tags will be refreshed next time
-     * they are requested.
+     * Mark the cached tags as stale, so they are revalidated against the remote data source
+     * the next time they are requested.
      */
+    @Override
     public void refreshTags() {
-        mCacheIsDirty = true;
+        synchronized (mLock) {
+            mCacheValidatedAt = NOT_VALIDATED;
+        }
     }
 
 
     /**
-     * Fetch tags from the remote api data source. If tags are successfully fetched, the
-     * cache will be updated, as well as the local data source. The provided callback will be
-     * notified of the results.
+     * Set how long cached tags are trusted.
+     *
+     * @param ttlMs Cached tags younger than this are returned without checking the remote
+     *              data source.
+     * @param maxStalenessMs Cached tags older than this are not returned while the remote
+     *                       data source is reachable. Must be at least {@code ttlMs}.
+     */
+    @Override
+    public void setCachePolicy(long ttlMs, long maxStalenessMs) {
+        checkArgument(ttlMs >= 0, "TTL cannot be negative");
+        checkArgument(maxStalenessMs >= ttlMs, "Max staleness cannot be less than the TTL");
+        synchronized (mLock) {
+            mCacheTtlMs = ttlMs;
+            mMaxStalenessMs = maxStalenessMs;
+        }
+    }
+
+
+    /**
+     * @return The local data source if it can be read a page at a time, else null.
+     */
+    @Nullable
+    @Override
+    public ITagPageSource getTagPageSource() {
+        if (mTagsLocalDataSource instanceof ITagPageSource) {
+            return (ITagPageSource) mTagsLocalDataSource;
+        }
+        return null;
+    }
+
+
+    /**
+     * @return True while tags are still being written to the local data source.
+     */
+    @Override
+    public boolean hasPendingSaves() {
+        return mPendingSaves.get() > 0;
+    }
+
+
+    /**
+     * Fetch tags from the remote api data source. The tags are streamed in batches, and each
+     * batch is applied to the cache and the local data source as it arrives. If the provided
+     * callback implements {@link IIncrementalLoadTagsCallback}, it is sent the tags each batch
+     * added. Every callback is sent the cached tags once the sync is complete.
+     * <p>
+     *     If a remote fetch is already in progress, the callback joins it.
+     * </p>
      *
      * @param callback The callback to send the results.
      */
     @Override
-    public void getTagsFromRemoteDataSource(@NonNull final ILoadTagsCallback callback) {
-        mTagsRemoteDataSource.getTags(new ILoadTagsCallback() {
+    public void getTagsFromRemoteDataSource(@NonNull ILoadTagsCallback callback) {
+        checkNotNull(callback);
+        final FetchRequest request;
+        final boolean primeCache;
+        synchronized (mLock) {
+            if (mRemoteFetch != null) {
+                Log.d(TAG, "Joining the remote fetch already in progress");
+                mRemoteFetch.addCallback(callback);
+                return;
+            }
+            request = mRemoteFetch = new FetchRequest(callback);
+            primeCache = mCachedTags == null && mTagsLocalDataSource != null;
+        }
+        if (!primeCache) {
+            syncFromRemoteDataSource(request);
+            return;
+        }
+        //
+        // Load the cache from the local data source first. It gives the caller tags to show
+        // while the remote tags download, and something to diff the remote tags against.
+        mTagsLocalDataSource.getTags(new ILoadTagsCallback() {
             @Override
             public void onTagsLoaded(List<? extends ITag> tags) {
-                refreshCache(tags);
-                refreshLocalDataSource(tags);
-                callback.onTagsLoaded(tags);
-                mIsFetchingTags = false;
+                List<ITag> cachedTags;
+                synchronized (mLock) {
+                    if (mCachedTags == null) {
+                        refreshCache(tags);
+                    }
+                    cachedTags = mCachedTags.isEmpty() ? null : getCachedTagList();
+                }
+                if (cachedTags != null) {
+                    request.onTagsLoaded(cachedTags);
+                }
+                syncFromRemoteDataSource(request);
             }
 
             @Override
             public void onDataNotAvailable(@NonNull String msg) {
-                callback.onDataNotAvailable(msg);
-                mIsFetchingTags = false;
+                syncFromRemoteDataSource(request);
             }
         });
     }
 
+    private void syncFromRemoteDataSource(@NonNull FetchRequest request) {
+        RemoteSync sync;
+        synchronized (mLock) {
+            if (mCachedTags == null) {
+                refreshCache(Collections.<ITag>emptyList());
+            }
+            //
+            // With nothing cached to fall back on, the remote data source must always deliver
+            // the tags, even if they haven't changed.
+            sync = mCachedTags.isEmpty()
+                    ? new RemoteSync(request)
+                    : new ConditionalRemoteSync(request);
+        }
+        mTagsRemoteDataSource.getTags(sync);
+    }
+
     /**
      * Fetch tags from the local datasource. If tags are successfully loaded, the cache will
      * be updated. The provided callback will be notified of the results.
+     * <p>
+     *     If a local fetch is already in progress, the callback joins it.
+     * </p>
      * @param callback The callback to send the results.
      */
     @Override
-    public void getTagsFromLocalDataSource(@NonNull final ILoadTagsCallback callback) {
+    public void getTagsFromLocalDataSource(@NonNull ILoadTagsCallback callback) {
+        checkNotNull(callback);
+        final FetchRequest request;
+        synchronized (mLock) {
+            if (mLocalFetch != null) {
+                Log.d(TAG, "Joining the local fetch already in progress");
+                mLocalFetch.addCallback(callback);
+                return;
+            }
+            request = mLocalFetch = new FetchRequest(callback);
+        }
         mTagsLocalDataSource.getTags(new ILoadTagsCallback() {
             @Override
             public void onTagsLoaded(List<? extends ITag> tags) {
-                refreshCache(tags);
-                callback.onTagsLoaded(tags);
-                mIsFetchingTags = false;
+                synchronized (mLock) {
+                    refreshCache(tags);
+                }
+                request.complete(tags);
             }
 
             @Override
             public void onDataNotAvailable(@NonNull String msg) {
-                callback.onDataNotAvailable(msg);
-                mIsFetchingTags = false;
+                request.onDataNotAvailable(msg);
             }
         });
     }
 
 
     /**
-     * Updates the local cache with a fresh copy of all the tags.
+     * Updates the local cache with a fresh copy of all the tags. Must be called while holding
+     * {@link #mLock}.
      *
      * @param tags The tags to save to cache.
      */
     private void refreshCache(List<? extends ITag> tags) {
         if (mCachedTags == null) {
-            mCachedTags = new ArrayList<>();
+            mCachedTags = new LinkedHashMap<>(tags.size() * 2);
         }
         mCachedTags.clear();
-        mCachedTags.addAll(tags);
-        mCacheIsDirty = false;
+        for (ITag tag : tags) {
+            mCachedTags.put(tag.getId(), tag);
+        }
+        mCachedTagList = null;
     }
 
 
     /**
-     * Save the provided tags to the local data source.
+     * @return A read-only list of the cached tags. Must be called while holding {@link #mLock}.
+     */
+    private List<ITag> getCachedTagList() {
+        if (mCachedTagList == null) {
+            mCachedTagList = Collections.unmodifiableList(new ArrayList<>(mCachedTags.values()));
+        }
+        return mCachedTagList;
+    }
+
+
+    /**
+     * Apply the tags that were added, changed or deleted to the cache, then to the local data
+     * source in a single transaction.
      *
-     * @param tags The tags to be saved to the local data source.
+     * @param delta The changes to apply.
      */
-    private void refreshLocalDataSource(List<? extends ITag> tags) {
-        if (mTagsLocalDataSource != null) {
-            mTagsLocalDataSource.saveTags(tags, new ITagsDataSource.ISaveTagsCallback() {
-                @Override
-                public void onTagsSavedSuccess() {
-                    Log.d(TAG, "Tags successfully saved to the local database");
+    private void applyDelta(TagsDelta delta) {
+        applyDelta(delta, null);
+    }
+
+    /**
+     * Apply the tags that were added, changed or deleted to the cache, then to the local data
+     * source in a single transaction.
+     *
+     * @param delta The changes to apply.
+     * @param onSaved Run once the changes are written to the local data source, whether or
+     *                not the write succeeded, or right away if there is nothing to write.
+     */
+    private void applyDelta(TagsDelta delta, @Nullable final Runnable onSaved) {
+        if (delta.isEmpty()) {
+            if (onSaved != null) {
+                onSaved.run();
+            }
+            return;
+        }
+        Log.d(TAG, "Syncing " + delta);
+        synchronized (mLock) {
+            for (int id : delta.getDeletedIds()) {
+                mCachedTags.remove(id);
+            }
+            for (ITag tag : delta.getChanged()) {
+                mCachedTags.put(tag.getId(), tag);
+            }
+            for (ITag tag : delta.getAdded()) {
+                mCachedTags.put(tag.getId(), tag);
+            }
+            mCachedTagList = null;
+        }
+
+        ITagsDataSource local = mTagsLocalDataSource;
+        if (local == null) {
+            if (onSaved != null) {
+                onSaved.run();
+            }
+            return;
+        }
+        mPendingSaves.incrementAndGet();
+        if (onSaved == null) {
+            local.applyDelta(delta, mSaveTagsCallback);
+            return;
+        }
+        ITagsDataSource.ISaveTagsCallback callback = new ITagsDataSource.ISaveTagsCallback() {
+            @Override
+            public void onTagsSavedSuccess() {
+                mBatchSaveCallbacks.remove(this);
+                mSaveTagsCallback.onTagsSavedSuccess();
+                onSaved.run();
+            }
+
+            @Override
+            public void onTagsSavedError(Exception e) {
+                mBatchSaveCallbacks.remove(this);
+                mSaveTagsCallback.onTagsSavedError(e);
+                onSaved.run();
+            }
+        };
+        mBatchSaveCallbacks.add(callback);
+        local.applyDelta(delta, callback);
+    }
+
+
+    /**
+     * Syncs the tags streamed from the remote data source into the cache and the local data
+     * source one batch at a time, so the whole download is never held in memory at once.
+     * Tags left in the cache that never arrived are deleted once the stream completes.
+     * <p>
+     *     A batch is only done once it is written to the local data source, and the remote
+     *     data source stops parsing while a few batches are not done. So when the database is
+     *     slower than the download, parsing waits for it instead of queueing every batch.
+     * </p>
+     * <p>
+     *     Only the tags each batch added are passed on while the stream is in progress. The
+     *     cache is copied for the caller once, when the sync is complete.
+     * </p>
+     */
+    private class RemoteSync implements IBatchLoadTagsCallback {
+
+        final FetchRequest mRequest;
+        private final Set<Integer> mUnseenIds;
+
+        /**
+         * Must be called while holding {@link #mLock}.
+         */
+        RemoteSync(@NonNull FetchRequest request) {
+            mRequest = request;
+            mUnseenIds = new HashSet<>(mCachedTags.keySet());
+        }
+
+        @Override
+        public void onTagsBatch(@NonNull List<? extends ITag> batch, @NonNull Runnable done) {
+            for (ITag tag : batch) {
+                mUnseenIds.remove(tag.getId());
+            }
+            TagsDelta delta;
+            synchronized (mLock) {
+                delta = TagsDelta.computeBatch(mCachedTags, batch);
+            }
+            applyDelta(delta, done);
+            if (delta.isEmpty()) {
+                return;
+            }
+            if (!delta.getAdded().isEmpty()) {
+                mRequest.onTagsAdded(delta.getAdded());
+            }
+        }
+
+        @Override
+        public void onTagsComplete() {
+            if (!mUnseenIds.isEmpty()) {
+                applyDelta(TagsDelta.deleted(mUnseenIds));
+            }
+            finish();
+        }
+
+        @Override
+        public void onTagsLoaded(List<? extends ITag> tags) {
+            //
+            // The remote data source delivered every tag at once.
+            TagsDelta delta;
+            synchronized (mLock) {
+                delta = TagsDelta.compute(mCachedTags, tags);
+            }
+            applyDelta(delta);
+            finish();
+        }
+
+        @Override
+        public void onDataNotAvailable(@NonNull String msg) {
+            mRequest.onDataNotAvailable(msg);
+        }
+
+        void finish() {
+            List<ITag> cachedTags;
+            synchronized (mLock) {
+                mCacheValidatedAt = SystemClock.elapsedRealtime();
+                cachedTags = getCachedTagList();
+            }
+            mRequest.complete(cachedTags);
+        }
+    }
+
+
+    /**
+     * A {@link RemoteSync} that lets the remote data source skip the download entirely when
+     * the tags are unchanged.
+     */
+    private class ConditionalRemoteSync extends RemoteSync
+            implements IConditionalLoadTagsCallback {
+
+        ConditionalRemoteSync(@NonNull FetchRequest request) {
+            super(request);
+        }
+
+        @Override
+        public void onTagsNotModified() {
+            //
+            // The cache and the local data source already hold these tags, so skip the
+            // parse and the database write.
+            Log.d(TAG, "Remote tags not modified, returning tags from cache");
+            finish();
+        }
+    }
+
+
+    /**
+     * A single fetch from a data source, shared by every caller that asked for tags while it
+     * was in progress. Intermediate results are sent to the callbacks attached so far, and the
+     * final result to all of them.
+     */
+    private final class FetchRequest implements IIncrementalLoadTagsCallback {
+
+        /**
+         * Guarded by {@link #mLock}.
+         */
+        private final List<ILoadTagsCallback> mCallbacks = new ArrayList<>(2);
+
+        FetchRequest(@NonNull ILoadTagsCallback callback) {
+            mCallbacks.add(callback);
+        }
+
+        /**
+         * Attach another caller to this fetch. Must be called while holding {@link #mLock}.
+         */
+        void addCallback(@NonNull ILoadTagsCallback callback) {
+            if (!mCallbacks.contains(callback)) {
+                mCallbacks.add(callback);
+            }
+        }
+
+        /**
+         * Send tags loaded so far. The fetch is still in progress.
+         */
+        @Override
+        public void onTagsLoaded(List<? extends ITag> tags) {
+            List<ILoadTagsCallback> callbacks;
+            synchronized (mLock) {
+                callbacks = new ArrayList<>(mCallbacks);
+            }
+            for (ILoadTagsCallback callback : callbacks) {
+                callback.onTagsLoaded(tags);
+            }
+        }
+
+        /**
+         * Send the tags added so far to the callbacks that accept them. The fetch is still in
+         * progress.
+         */
+        @Override
+        public void onTagsAdded(@NonNull List<? extends ITag> added) {
+            List<ILoadTagsCallback> callbacks;
+            synchronized (mLock) {
+                callbacks = new ArrayList<>(mCallbacks);
+            }
+            for (ILoadTagsCallback callback : callbacks) {
+                if (callback instanceof IIncrementalLoadTagsCallback) {
+                    ((IIncrementalLoadTagsCallback) callback).onTagsAdded(added);
                 }
+            }
+        }
 
-                @Override
-                public void onTagsSavedError(Exception e) {
-                    Log.e(TAG, "Error saving tags to the local database", e);
+        @Override
+        public void onDataNotAvailable(@NonNull String msg) {
+            for (ILoadTagsCallback callback : finish()) {
+                callback.onDataNotAvailable(msg);
+            }
+        }
+
+        /**
+         * Send the final tags and end the fetch.
+         */
+        void complete(List<? extends ITag> tags) {
+            for (ILoadTagsCallback callback : finish()) {
+                callback.onTagsLoaded(tags);
+            }
+        }
+
+        /**
+         * End the fetch so no more callers can join it.
+         * @return Every callback that joined.
+         */
+        private List<ILoadTagsCallback> finish() {
+            synchronized (mLock) {
+                if (mRemoteFetch == this) {
+                    mRemoteFetch = null;
+                }
+                if (mLocalFetch == this) {
+                    mLocalFetch = null;
                 }
-            });
+                return new ArrayList<>(mCallbacks);
+            }
+        }
+    }
+
+
+    /**
+     * Passes tags on to a callback only if they differ from the last tags it was sent. The
+     * cache hands out the same read-only snapshot until it changes, so unchanged tags are
+     * the same list.
+     */
+    private static final class UpdateIfChangedCallback implements IIncrementalLoadTagsCallback {
+
+        private final ILoadTagsCallback mCallback;
+        private List<? extends ITag> mLastTags;
+
+        UpdateIfChangedCallback(@NonNull ILoadTagsCallback callback,
+                                @Nullable List<? extends ITag> sentTags) {
+            mCallback = callback;
+            mLastTags = sentTags;
+        }
+
+        @Override
+        public synchronized void onTagsLoaded(List<? extends ITag> tags) {
+            if (tags == mLastTags) {
+                Log.d(TAG, "Tags are unchanged");
+                return;
+            }
+            mLastTags = tags;
+            mCallback.onTagsLoaded(tags);
+        }
+
+        @Override
+        public synchronized void onTagsAdded(@NonNull List<? extends ITag> added) {
+            if (mCallback instanceof IIncrementalLoadTagsCallback) {
+                ((IIncrementalLoadTagsCallback) mCallback).onTagsAdded(added);
+            }
+        }
+
+        @Override
+        public synchronized void onDataNotAvailable(@NonNull String msg) {
+            if (mLastTags != null) {
+                //
+                // The caller already has tags to show, even if they are stale.
+                Log.w(TAG, "Unable to revalidate tags: " + msg);
+                return;
+            }
+            mCallback.onDataNotAvailable(msg);
         }
     }
 }
@@ -0,0 +1,68 @@
+package com.amandariu.tagger.demo.data.source.local;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.WorkerThread;
+
+/**
+ * A unit of database work run by a {@link TagsDbExecutor}. Like an
+ * {@link android.os.AsyncTask}, the work is done in {@link #doInBackground()} and the result
+ * is handed to {@link #onPostExecute(Object)} on the main thread, unless the task was
+ * cancelled first.
+ *
+ * @author Amanda Riu
+ */
+abstract class DbTask<Result> implements Runnable {
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile boolean mCancelled = false;
+
+    /**
+     * Do the database work on the executor thread.
+     * @return The result to send to {@link #onPostExecute(Object)}.
+     */
+    @WorkerThread
+    protected abstract Result doInBackground();
+
+    /**
+     * Called on the main thread with the result of {@link #doInBackground()}, if the task
+     * wasn't cancelled.
+     */
+    protected void onPostExecute(Result result) {
+    }
+
+    /**
+     * Stop this task. If it hasn't started it never will, and if it is running its result
+     * is discarded. A write already in progress still runs to the end of its transaction.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * @return True if {@link #cancel()} has been called.
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public final void run() {
+        if (mCancelled) {
+            return;
+        }
+        final Result result = doInBackground();
+        if (mCancelled) {
+            return;
+        }
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    onPostExecute(result);
+                }
+            }
+        });
+    }
+}
@@ -1,6 +1,5 @@
 package com.amandariu.tagger.demo.data.source.local;
 
-import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
@@ -19,7 +18,7 @@ import static com.amandariu.tagger.demo.data.source.ISourceBase.ILoadTagsCallbac
  *
  * @author Amanda Riu
  */
-class GetTagsTask extends AsyncTask<Void, Void, List<TagEntity>> {
+class GetTagsTask extends DbTask<List<TagEntity>> {
 
     private static final String TAG = GetTagsTask.class.getSimpleName();
 
@@ -32,7 +31,7 @@ class GetTagsTask extends AsyncTask<Void, Void, List<TagEntity>> {
     }
 
     @Override
-    protected List<TagEntity> doInBackground(Void... voids) {
+    protected List<TagEntity> doInBackground() {
         long startTime = System.nanoTime();
         List<TagEntity> tags = mDb.tagDao().loadAllTags();
         long elapsedTime = System.nanoTime() - startTime;
@@ -1,11 +1,11 @@
 package com.amandariu.tagger.demo.data.source.local;
 
-import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
+import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.demo.data.source.local.db.TagDao;
 import com.amandariu.tagger.demo.data.source.local.db.TagDatabase;
-import com.amandariu.tagger.demo.data.source.local.db.TagEntity;
 
 import java.lang.ref.WeakReference;
 import java.util.List;
@@ -14,20 +14,21 @@ import java.util.concurrent.TimeUnit;
 import static com.amandariu.tagger.demo.data.source.ITagsDataSource.ISaveTagsCallback;
 
 /**
- * Save tags to the database for offline use.
+ * Save tags to the database for offline use. Tags that already exist are updated, and the
+ * tags are written a chunk at a time so a large catalog doesn't hold one huge transaction.
  *
  * @author Amanda Riu
  */
-class SaveTagsTask extends AsyncTask<Void, Void, Void> {
+class SaveTagsTask extends DbTask<Void> {
 
     private final String TAG = SaveTagsTask.class.getSimpleName();
 
     private final WeakReference<ISaveTagsCallback> mCallback;
     private final TagDatabase mDb;
-    private final List<TagEntity> mTags;
+    private final List<? extends ITag> mTags;
 
     public SaveTagsTask(@NonNull TagDatabase db,
-                        @NonNull List<TagEntity> tags,
+                        @NonNull List<? extends ITag> tags,
                         @NonNull ISaveTagsCallback callback) {
         mCallback = new WeakReference<>(callback);
         mDb = db;
@@ -35,14 +36,21 @@ class SaveTagsTask extends AsyncTask<Void, Void, Void> {
     }
 
     @Override
-    protected Void doInBackground(Void... voids) {
+    protected Void doInBackground() {
 
         long startTime = System.nanoTime();
         try {
-            mDb.tagDao().insertAll(mTags);
+            int changedRows = mDb.tagDao().upsertAll(mTags, TagDao.DEFAULT_UPSERT_CHUNK_SIZE,
+                    new TagDao.IUpsertProgressListener() {
+                        @Override
+                        public void onUpsertProgress(int written, int total) {
+                            Log.v(TAG, "Saved [" + written + "] of [" + total + "] tags");
+                        }
+                    });
             long elapsedTime = System.nanoTime() - startTime;
             Log.d(TAG, "Total time to save Tags to database ["
-                    + TimeUnit.NANOSECONDS.toSeconds(elapsedTime) + "] seconds");
+                    + TimeUnit.NANOSECONDS.toMillis(elapsedTime) + "] ms, ["
+                    + changedRows + "] rows changed");
             ISaveTagsCallback callback = mCallback.get();
             if (callback != null) {
                 callback.onTagsSavedSuccess();
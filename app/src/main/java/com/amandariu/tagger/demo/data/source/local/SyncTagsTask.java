@@ -0,0 +1,60 @@
+package com.amandariu.tagger.demo.data.source.local;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.amandariu.tagger.demo.data.source.TagsDelta;
+import com.amandariu.tagger.demo.data.source.local.db.TagConverter;
+import com.amandariu.tagger.demo.data.source.local.db.TagDatabase;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+import static com.amandariu.tagger.demo.data.source.ITagsDataSource.ISaveTagsCallback;
+
+/**
+ * Apply the changes from a sync to the database in a single transaction.
+ *
+ * @author Amanda Riu
+ */
+class SyncTagsTask extends DbTask<Void> {
+
+    private final String TAG = SyncTagsTask.class.getSimpleName();
+
+    private final WeakReference<ISaveTagsCallback> mCallback;
+    private final TagDatabase mDb;
+    private final TagsDelta mDelta;
+
+    SyncTagsTask(@NonNull TagDatabase db,
+                 @NonNull TagsDelta delta,
+                 @NonNull ISaveTagsCallback callback) {
+        mCallback = new WeakReference<>(callback);
+        mDb = db;
+        mDelta = delta;
+    }
+
+    @Override
+    protected Void doInBackground() {
+
+        long startTime = System.nanoTime();
+        try {
+            mDb.tagDao().applyDelta(
+                    TagConverter.toTagEntityList(mDelta.getAdded()),
+                    TagConverter.toTagEntityList(mDelta.getChanged()),
+                    mDelta.getDeletedIds());
+            long elapsedTime = System.nanoTime() - startTime;
+            Log.d(TAG, "Total time to apply " + mDelta + " to database ["
+                    + TimeUnit.NANOSECONDS.toMillis(elapsedTime) + "] ms");
+            ISaveTagsCallback callback = mCallback.get();
+            if (callback != null) {
+                callback.onTagsSavedSuccess();
+            }
+        } catch (Exception e) {
+            ISaveTagsCallback callback = mCallback.get();
+            if (callback != null) {
+                callback.onTagsSavedError(e);
+            }
+        }
+        return null;
+    }
+}
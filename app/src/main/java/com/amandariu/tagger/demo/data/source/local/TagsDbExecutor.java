@@ -0,0 +1,112 @@
+package com.amandariu.tagger.demo.data.source.local;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the work of the local data source on its own threads instead of the app wide
+ * {@link android.os.AsyncTask} executor.
+ * <p>
+ *     Reads and writes run in separate lanes. Several reads may run at once, while writes run
+ *     one at a time in the order they were submitted, so a bulk write never holds up a read
+ *     and two writes never compete for the database lock.
+ * </p>
+ *
+ * @author Amanda Riu
+ */
+class TagsDbExecutor {
+
+    private static final String TAG = TagsDbExecutor.class.getSimpleName();
+
+    private static final int READ_THREADS =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ExecutorService mReadExecutor;
+    private final ExecutorService mWriteExecutor;
+    private final Set<DbTask<?>> mTasks =
+            Collections.newSetFromMap(new ConcurrentHashMap<DbTask<?>, Boolean>());
+
+    TagsDbExecutor() {
+        mReadExecutor = createExecutor("read", READ_THREADS);
+        mWriteExecutor = createExecutor("write", 1);
+    }
+
+    /**
+     * Run a task that only reads from the database.
+     * @param task The task to run.
+     */
+    void executeRead(@NonNull DbTask<?> task) {
+        execute(mReadExecutor, task);
+    }
+
+    /**
+     * Run a task that writes to the database, after any writes already submitted.
+     * @param task The task to run.
+     */
+    void executeWrite(@NonNull DbTask<?> task) {
+        execute(mWriteExecutor, task);
+    }
+
+    /**
+     * Cancel every task that hasn't finished and stop both lanes. A write already in
+     * progress is allowed to finish its transaction.
+     */
+    void shutdown() {
+        Log.v(TAG, "Cancelling [" + mTasks.size() + "] database tasks");
+        for (DbTask<?> task : mTasks) {
+            task.cancel();
+        }
+        mTasks.clear();
+        mReadExecutor.shutdown();
+        mWriteExecutor.shutdown();
+    }
+
+    private void execute(@NonNull ExecutorService executor, @NonNull final DbTask<?> task) {
+        mTasks.add(task);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    mTasks.remove(task);
+                }
+            }
+        });
+    }
+
+    private static ExecutorService createExecutor(@NonNull final String lane, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(@NonNull final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, "TagsDb-" + lane + "-" + mCount.getAndIncrement());
+                    }
+                });
+        //
+        // Let idle threads exit, since the database is busy mostly at startup.
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
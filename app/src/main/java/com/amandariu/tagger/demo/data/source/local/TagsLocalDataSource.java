@@ -1,36 +1,53 @@
 package com.amandariu.tagger.demo.data.source.local;
 
-import android.arch.persistence.room.Room;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.ITagPageSource;
 import com.amandariu.tagger.demo.TaggerApplication;
 import com.amandariu.tagger.demo.data.source.ITagsDataSource;
+import com.amandariu.tagger.demo.data.source.TagsDelta;
 import com.amandariu.tagger.demo.data.source.local.db.TagConverter;
+import com.amandariu.tagger.demo.data.source.local.db.TagDao;
 import com.amandariu.tagger.demo.data.source.local.db.TagDatabase;
 import com.amandariu.tagger.demo.data.source.local.db.TagEntity;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * Local data source backed by the Room {@link TagDatabase}. Also serves the available tags to
+ * the tagger a page at a time, sorted by the normalized label in SQL.
+ * <p>
+ *     Loads and saves run on a {@link TagsDbExecutor}, so reads are never queued behind a
+ *     bulk write.
+ * </p>
+ *
  * @author amandariu (11/11/17)
  */
-public class TagsLocalDataSource implements ITagsDataSource {
+public class TagsLocalDataSource implements ITagsDataSource, ITagPageSource {
 
     private static final String TAG = TagsLocalDataSource.class.getSimpleName();
-    private TagDatabase mDb;
+    private volatile TagDatabase mDb;
+    private final TagsDbExecutor mExecutor = new TagsDbExecutor();
 
 
     public TagsLocalDataSource() {
+        this(TagDatabase.Config.DEFAULT);
+    }
+
+    /**
+     * @param config How to tune the database connection.
+     */
+    public TagsLocalDataSource(@NonNull TagDatabase.Config config) {
         Log.v(TAG, "Initializing the local Tag Datasource");
         long startTime = System.nanoTime();
-        mDb = Room.databaseBuilder(
+        mDb = TagDatabase.build(
                 TaggerApplication.getInstance().getApplicationContext(),
-                TagDatabase.class,
-                TagDatabase.DATABASE_NAME)
-                .build();
+                TagDatabase.DATABASE_NAME,
+                config);
         long elapsedTime = System.nanoTime() - startTime;
         Log.d(TAG, "Total time to initialize database ["
                 + TimeUnit.NANOSECONDS.toSeconds(elapsedTime) + "] seconds");
@@ -43,11 +60,11 @@ public class TagsLocalDataSource implements ITagsDataSource {
     @Override
     public void getTags(@NonNull ILoadTagsCallback callback) {
         Log.d(TAG, "Processing request to load tags from DB");
-        new GetTagsTask(mDb, callback).execute();
+        mExecutor.executeRead(new GetTagsTask(mDb, callback));
     }
 
     /**
-     * Save tags to the local database.
+     * Save tags to the local database, updating any that already exist.
      * @param tags The list of tags to write to the database.
      * @param callback The callback to notify of result.
      */
@@ -55,16 +72,98 @@ public class TagsLocalDataSource implements ITagsDataSource {
                          @NonNull final ISaveTagsCallback callback) {
         Log.d(TAG, "Processing request to save ["
                 + (tags == null ? "null" : tags.size()) + "] tags to the db");
-        final List<TagEntity> tagEntities = TagConverter.toTagEntityList(tags);
-        new SaveTagsTask(mDb, tagEntities, callback).execute();
+        mExecutor.executeWrite(new SaveTagsTask(mDb, tags, callback));
+    }
+
+    /**
+     * Apply the changes from a sync to the local database in a single transaction.
+     * @param delta The added, changed and deleted tags.
+     * @param callback The callback to notify of result.
+     */
+    @Override
+    public void applyDelta(@NonNull TagsDelta delta, @NonNull ISaveTagsCallback callback) {
+        Log.d(TAG, "Processing request to apply " + delta + " to the db");
+        mExecutor.executeWrite(new SyncTagsTask(mDb, delta, callback));
+    }
+
+    /**
+     * Count the tags whose label contains the query, ignoring case and accents, the same as
+     * the tagger's in-memory filter. Must not be called on the main thread.
+     * @param query The text to match, or empty to count every tag.
+     * @return The number of matching tags.
+     */
+    @Override
+    public int countTags(@NonNull String query) {
+        TagDatabase db = mDb;
+        if (db == null) {
+            return 0;
+        }
+        TagDao dao = db.tagDao();
+        String pattern = TagDao.toContainsPattern(query);
+        return pattern == null ? dao.countAllTags() : dao.countTagsContaining(pattern);
+    }
+
+    /**
+     * Load a page of the tags whose label contains the query, ignoring case and accents, in
+     * label order. Must not be called on the main thread.
+     * @param query The text to match, or empty to load every tag.
+     * @param offset The position of the first tag to load.
+     * @param limit The maximum number of tags to load.
+     * @return The page of tags.
+     */
+    @NonNull
+    @Override
+    public List<ITag> loadTags(@NonNull String query, int offset, int limit) {
+        TagDatabase db = mDb;
+        if (db == null) {
+            return Collections.emptyList();
+        }
+        TagDao dao = db.tagDao();
+        String pattern = TagDao.toContainsPattern(query);
+        List<TagEntity> page = pattern == null
+                ? dao.loadTagsPage(offset, limit)
+                : dao.loadTagsContainingPage(pattern, offset, limit);
+        return TagConverter.toTagList(page);
+    }
+
+    /**
+     * Load the tags with the provided ids. Must not be called on the main thread.
+     * @param ids The ids of the tags to load.
+     * @return The tags found, in no particular order.
+     */
+    @NonNull
+    @Override
+    public List<ITag> loadTagsById(@NonNull int[] ids) {
+        TagDatabase db = mDb;
+        if (db == null || ids.length == 0) {
+            return Collections.emptyList();
+        }
+        return TagConverter.toTagList(db.tagDao().loadTagsByIds(ids));
+    }
+
+    /**
+     * Open the database, creating or migrating it if needed, so the first query doesn't pay
+     * for it. Also regenerates the sort keys if the device language changed, so pages stay in
+     * the same order as the tags sorted in memory.
+     */
+    @Override
+    public void warmUp() {
+        TagDatabase db = mDb;
+        if (db != null) {
+            long startTime = System.nanoTime();
+            TagDatabase.updateSortKeysIfLocaleChanged(db.getOpenHelper().getWritableDatabase());
+            Log.d(TAG, "Total time to open database ["
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "] ms");
+        }
     }
 
     /**
-     * Shutdown the database.
+     * Cancel any outstanding database work and shutdown the database.
      */
     @Override
     public void shutdown() {
         Log.v(TAG, "Shutting down the local tags datasource");
+        mExecutor.shutdown();
         if (mDb != null) {
             mDb.close();
         }
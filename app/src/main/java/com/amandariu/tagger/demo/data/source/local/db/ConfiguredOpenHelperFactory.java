@@ -0,0 +1,111 @@
+package com.amandariu.tagger.demo.data.source.local.db;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteOpenHelper;
+import android.arch.persistence.db.framework.FrameworkSQLiteOpenHelperFactory;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+/**
+ * Opens the framework SQLite helper Room normally uses, then tunes each connection it opens
+ * with a {@link TagDatabase.Config}. Room 1.0 has no option for the journal mode or pragmas,
+ * so they are applied in {@link SupportSQLiteOpenHelper.Callback#onConfigure}, before Room
+ * creates or migrates the schema.
+ *
+ * @author Amanda Riu
+ */
+class ConfiguredOpenHelperFactory implements SupportSQLiteOpenHelper.Factory {
+
+    private static final String TAG = ConfiguredOpenHelperFactory.class.getSimpleName();
+
+    private final SupportSQLiteOpenHelper.Factory mDelegate =
+            new FrameworkSQLiteOpenHelperFactory();
+    private final TagDatabase.Config mConfig;
+
+    ConfiguredOpenHelperFactory(@NonNull TagDatabase.Config config) {
+        mConfig = config;
+    }
+
+    @Override
+    public SupportSQLiteOpenHelper create(SupportSQLiteOpenHelper.Configuration configuration) {
+        return mDelegate.create(SupportSQLiteOpenHelper.Configuration.builder(configuration.context)
+                .name(configuration.name)
+                .callback(new ConfiguringCallback(configuration.callback, mConfig))
+                .build());
+    }
+
+
+    /**
+     * Applies the config, then passes every event on to Room's own callback.
+     */
+    private static class ConfiguringCallback extends SupportSQLiteOpenHelper.Callback {
+
+        private final SupportSQLiteOpenHelper.Callback mDelegate;
+        private final TagDatabase.Config mConfig;
+
+        ConfiguringCallback(@NonNull SupportSQLiteOpenHelper.Callback delegate,
+                            @NonNull TagDatabase.Config config) {
+            super(delegate.version);
+            mDelegate = delegate;
+            mConfig = config;
+        }
+
+        @Override
+        public void onConfigure(SupportSQLiteDatabase db) {
+            //
+            // Switching the journal mode resets the synchronous level, so it goes first.
+            if (mConfig.isWriteAheadLogging()) {
+                db.enableWriteAheadLogging();
+            } else {
+                db.disableWriteAheadLogging();
+            }
+            db.setMaxSqlCacheSize(mConfig.getStatementCacheSize());
+            //
+            // A negative cache size is in KiB rather than pages.
+            pragma(db, "cache_size = -" + mConfig.getPageCacheKib());
+            pragma(db, "mmap_size = " + mConfig.getMmapSizeBytes());
+            pragma(db, "synchronous = " + mConfig.getSynchronous().name());
+            Log.d(TAG, "Opened database with " + mConfig);
+            mDelegate.onConfigure(db);
+        }
+
+        @Override
+        public void onCreate(SupportSQLiteDatabase db) {
+            mDelegate.onCreate(db);
+        }
+
+        @Override
+        public void onUpgrade(SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+            mDelegate.onUpgrade(db, oldVersion, newVersion);
+        }
+
+        @Override
+        public void onDowngrade(SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+            mDelegate.onDowngrade(db, oldVersion, newVersion);
+        }
+
+        @Override
+        public void onOpen(SupportSQLiteDatabase db) {
+            mDelegate.onOpen(db);
+        }
+
+        @Override
+        public void onCorruption(SupportSQLiteDatabase db) {
+            mDelegate.onCorruption(db);
+        }
+
+        /**
+         * Some pragmas return a row when set, which execSQL rejects, so every pragma is run
+         * as a query.
+         */
+        private static void pragma(SupportSQLiteDatabase db, String pragma) {
+            Cursor cursor = db.query("PRAGMA " + pragma);
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+}
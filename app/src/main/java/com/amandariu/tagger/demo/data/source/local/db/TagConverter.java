@@ -24,7 +24,7 @@ public abstract class TagConverter {
     public static List<ITag> toTagList(@NonNull List<TagEntity> tags) {
         final List<ITag> newTags = new ArrayList<>(tags.size());
         for (TagEntity t : tags) {
-            newTags.add(new Tag(t.getId(), t.getLabel(), t.getColor()));
+            newTags.add(new Tag(t.getId(), t.getLabel(), t.getColor(), t.getColorInt()));
         }
         return newTags;
     }
@@ -1,25 +1,282 @@
 package com.amandariu.tagger.demo.data.source.local.db;
 
+import android.arch.persistence.db.SupportSQLiteStatement;
 import android.arch.persistence.room.Dao;
 import android.arch.persistence.room.Insert;
 import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
+import android.arch.persistence.room.RoomDatabase;
+import android.arch.persistence.room.Update;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
 
+import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.demo.data.Tag;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Dao for working with the tags table.
+ * <p>
+ *     The "containing" methods find labels that contain the query anywhere, the same as the
+ *     tagger's in-memory filter, and are what the picker pages through.
+ * </p>
  *
  * @author amandariu (11/12/17)
  */
 @Dao
-public interface TagDao {
-    @Query("select * from tags")
-    List<TagEntity> loadAllTags();
+public abstract class TagDao {
+
+    private static final String TAG = TagDao.class.getSimpleName();
+
+    /**
+     * SQLite allows at most 999 bound variables in a statement.
+     */
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+
+    /**
+     * The number of rows {@link #upsertAll} writes per transaction by default.
+     */
+    public static final int DEFAULT_UPSERT_CHUNK_SIZE = 1000;
+
+    /**
+     * Notified on the writing thread after each chunk of an {@link #upsertAll} is committed.
+     */
+    public interface IUpsertProgressListener {
+        /**
+         * @param written The number of tags written so far.
+         * @param total The number of tags being written.
+         */
+        void onUpsertProgress(int written, int total);
+    }
+
+    private final RoomDatabase mDb;
+
+    public TagDao(RoomDatabase db) {
+        mDb = db;
+    }
+
+    /**
+     * Load every tag in label order, read through the sort_key index. This is the order
+     * {@link ITag#compareTo} sorts tags in, so sorting the result in memory again is cheap.
+     */
+    @Query("select * from tags order by sort_key, id")
+    public abstract List<TagEntity> loadAllTags();
 
     @Insert(onConflict = OnConflictStrategy.IGNORE)
-    void insertAll(List<TagEntity> tags);
+    public abstract void insertAll(List<TagEntity> tags);
 
     @Insert(onConflict = OnConflictStrategy.IGNORE)
-    void save(TagEntity tag);
+    public abstract void save(TagEntity tag);
+
+    @Update
+    public abstract void updateAll(List<TagEntity> tags);
+
+    @Query("delete from tags where id in (:ids)")
+    public abstract void deleteByIds(int[] ids);
+
+    /**
+     * Prefer {@link #loadTagsByIds(int[])}, which splits the ids into statements SQLite accepts.
+     */
+    @Query("select * from tags where id in (:ids)")
+    public abstract List<TagEntity> loadTagsByIdsChunk(int[] ids);
+
+    /**
+     * Load the tags with the provided ids, in no particular order.
+     * @param ids The ids to load. May be more than SQLite allows in a single statement.
+     */
+    public List<TagEntity> loadTagsByIds(@NonNull int[] ids) {
+        if (ids.length <= MAX_IDS_PER_STATEMENT) {
+            return loadTagsByIdsChunk(ids);
+        }
+        List<TagEntity> tags = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i += MAX_IDS_PER_STATEMENT) {
+            tags.addAll(loadTagsByIdsChunk(Arrays.copyOfRange(ids, i,
+                    Math.min(ids.length, i + MAX_IDS_PER_STATEMENT))));
+        }
+        return tags;
+    }
+
+    /**
+     * Apply a set of changes in a single transaction, so readers never see a partial sync.
+     * Changed rows are updated in place rather than deleted and inserted again.
+     * @param added The new tags.
+     * @param changed The tags whose label or color changed.
+     * @param deletedIds The ids of the tags to delete.
+     */
+    public void applyDelta(@NonNull List<TagEntity> added,
+                           @NonNull List<TagEntity> changed,
+                           @NonNull int[] deletedIds) {
+        mDb.beginTransaction();
+        try {
+            for (int i = 0; i < deletedIds.length; i += MAX_IDS_PER_STATEMENT) {
+                deleteByIds(Arrays.copyOfRange(deletedIds, i,
+                        Math.min(deletedIds.length, i + MAX_IDS_PER_STATEMENT)));
+            }
+            if (!changed.isEmpty()) {
+                updateAll(changed);
+            }
+            if (!added.isEmpty()) {
+                insertAll(added);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * Insert new tags and update existing ones, a chunk of rows per transaction. Tags are
+     * bound straight into two statements compiled once for the whole call, so no entity is
+     * created per row. Committing each chunk keeps the journal small and lets readers in
+     * between chunks, so the list may be very large.
+     * <p>
+     *     Existing rows are only updated if their label or color changed, so unchanged tags
+     *     cost a lookup rather than a write.
+     * </p>
+     * @param tags The tags to write.
+     * @param chunkSize The number of rows to write per transaction.
+     * @param listener Notified after each chunk is committed, or null.
+     * @return The number of rows inserted or updated.
+     */
+    public int upsertAll(@NonNull List<? extends ITag> tags, int chunkSize,
+                         @Nullable IUpsertProgressListener listener) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        int changedRows = 0;
+        SupportSQLiteStatement insert = mDb.compileStatement(
+                "INSERT OR IGNORE INTO tags (id, label, color, label_key, color_int, sort_key)"
+                        + " VALUES (?, ?, ?, ?, ?, ?)");
+        SupportSQLiteStatement update = mDb.compileStatement(
+                "UPDATE tags SET label = ?2, color = ?3, label_key = ?4, color_int = ?5,"
+                        + " sort_key = ?6"
+                        + " WHERE id = ?1 AND (label IS NOT ?2 OR color IS NOT ?3)");
+        try {
+            int total = tags.size();
+            for (int start = 0; start < total; start += chunkSize) {
+                int end = Math.min(total, start + chunkSize);
+                mDb.beginTransaction();
+                try {
+                    for (int i = start; i < end; i++) {
+                        ITag tag = tags.get(i);
+                        String label = tag.getLabel();
+                        String labelKey = TagEntity.normalizeLabel(label);
+                        int colorInt = Tag.parseColor(tag.getColor());
+                        byte[] sortKey = TagEntity.sortKey(label);
+                        bindTag(insert, tag.getId(), label, tag.getColor(), labelKey, colorInt,
+                                sortKey);
+                        if (insert.executeInsert() != -1) {
+                            changedRows++;
+                            continue;
+                        }
+                        //
+                        // The id already exists.
+                        bindTag(update, tag.getId(), label, tag.getColor(), labelKey, colorInt,
+                                sortKey);
+                        changedRows += update.executeUpdateDelete();
+                    }
+                    mDb.setTransactionSuccessful();
+                } finally {
+                    mDb.endTransaction();
+                }
+                if (listener != null) {
+                    listener.onUpsertProgress(end, total);
+                }
+            }
+        } finally {
+            closeQuietly(insert);
+            closeQuietly(update);
+        }
+        return changedRows;
+    }
+
+    private static void bindTag(SupportSQLiteStatement statement, int id,
+                                @Nullable String label, @Nullable String color,
+                                @Nullable String labelKey, int colorInt,
+                                @Nullable byte[] sortKey) {
+        statement.bindLong(1, id);
+        bindString(statement, 2, label);
+        bindString(statement, 3, color);
+        bindString(statement, 4, labelKey);
+        statement.bindLong(5, colorInt);
+        if (sortKey == null) {
+            statement.bindNull(6);
+        } else {
+            statement.bindBlob(6, sortKey);
+        }
+    }
+
+    private static void bindString(SupportSQLiteStatement statement, int index,
+                                   @Nullable String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing statement", e);
+        }
+    }
+
+    @Query("select count(*) from tags")
+    public abstract int countAllTags();
+
+    /**
+     * Load a page of tags in label order. Reads the sort_key index, so only the requested
+     * rows are materialized.
+     */
+    @Query("select * from tags order by sort_key, id limit :limit offset :offset")
+    public abstract List<TagEntity> loadTagsPage(int offset, int limit);
+
+    /**
+     * Count the tags whose label contains a query.
+     * @param pattern A pattern built with {@link #toContainsPattern(String)}.
+     * @return The number of matching tags.
+     */
+    @Query("select count(*) from tags where label_key like :pattern escape '\\'")
+    public abstract int countTagsContaining(String pattern);
+
+    /**
+     * Load a page of the tags whose label contains a query, in label order. Reads the
+     * sort_key index, so it stops as soon as the page is full.
+     * @param pattern A pattern built with {@link #toContainsPattern(String)}.
+     */
+    @Query("select * from tags where label_key like :pattern escape '\\'"
+            + " order by sort_key, id limit :limit offset :offset")
+    public abstract List<TagEntity> loadTagsContainingPage(String pattern, int offset, int limit);
+
+    /**
+     * Convert what the user typed into a LIKE pattern matching every normalized label that
+     * contains it. For example "Red_Ap" becomes "%red\_ap%".
+     * @param query The search text.
+     * @return The pattern, or null if the text is empty.
+     */
+    @Nullable
+    public static String toContainsPattern(@NonNull String query) {
+        String key = TagEntity.normalizeLabel(query);
+        if (key.isEmpty()) {
+            return null;
+        }
+        StringBuilder pattern = new StringBuilder(key.length() + 4);
+        pattern.append('%');
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '%' || c == '_' || c == '\\') {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
 }
@@ -1,15 +1,341 @@
 package com.amandariu.tagger.demo.data.source.local.db;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteStatement;
 import android.arch.persistence.room.Database;
+import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
+import android.arch.persistence.room.migration.Migration;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.demo.data.Tag;
 
 /**
  * @author amandariu (11/12/17)
  */
-@Database(entities = {TagEntity.class}, version = 1)
+@Database(entities = {TagEntity.class}, version = 6)
 public abstract class TagDatabase extends RoomDatabase {
 
     public static final String DATABASE_NAME = "tags.db";
 
+    /**
+     * Holds the single locale the sort_key column was generated for.
+     */
+    private static final String SORT_LOCALE_TABLE_NAME = "tags_sort_locale";
+
+    /**
+     * Adds the indexed label_key column used to page through tags in label order.
+     */
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE tags ADD COLUMN label_key TEXT");
+            database.execSQL("UPDATE tags SET label_key = lower(label)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_tags_label_key ON tags (label_key)");
+        }
+    };
+
+    /**
+     * Version 3 added a full text index, which nothing searches any more, so there is nothing
+     * to do. See {@link #MIGRATION_5_6}.
+     */
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+        }
+    };
+
+    /**
+     * Adds the parsed color_int column, and folds accents out of label_key. Neither can be
+     * computed in SQL, so every row is rewritten. The full text index is dropped first, so
+     * the rewrite doesn't update it.
+     */
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            dropSearchIndex(database);
+            database.execSQL("ALTER TABLE tags ADD COLUMN color_int INTEGER NOT NULL DEFAULT 0");
+            SupportSQLiteStatement update = database.compileStatement(
+                    "UPDATE tags SET label_key = ?, color_int = ? WHERE id = ?");
+            Cursor cursor = database.query("SELECT id, label, color FROM tags");
+            try {
+                while (cursor.moveToNext()) {
+                    String labelKey = TagEntity.normalizeLabel(cursor.getString(1));
+                    if (labelKey == null) {
+                        update.bindNull(1);
+                    } else {
+                        update.bindString(1, labelKey);
+                    }
+                    update.bindLong(2, Tag.parseColor(cursor.getString(2)));
+                    update.bindLong(3, cursor.getInt(0));
+                    update.executeUpdateDelete();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    };
+
+    /**
+     * Adds the sort_key column and its index, and drops the label_key index, which nothing
+     * orders by any more.
+     */
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            dropSearchIndex(database);
+            database.execSQL("ALTER TABLE tags ADD COLUMN sort_key BLOB");
+            database.execSQL("DROP INDEX IF EXISTS index_tags_label_key");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_tags_sort_key ON tags (sort_key)");
+            updateSortKeys(database);
+        }
+    };
+
+    /**
+     * Drops the full text index. Tags are searched for labels containing the query, like the
+     * tagger's in-memory filter, which a word index can't answer, so every write was paying
+     * to keep an index nothing read.
+     */
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            dropSearchIndex(database);
+        }
+    };
+
+    /**
+     * Drop the tags_fts full text index and the triggers that kept it in sync, if they exist.
+     */
+    private static void dropSearchIndex(SupportSQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS tags_fts_before_update");
+        db.execSQL("DROP TRIGGER IF EXISTS tags_fts_before_delete");
+        db.execSQL("DROP TRIGGER IF EXISTS tags_fts_after_update");
+        db.execSQL("DROP TRIGGER IF EXISTS tags_fts_after_insert");
+        db.execSQL("DROP TABLE IF EXISTS tags_fts");
+    }
+
+    /**
+     * Regenerate the sort_key of every tag if the locale tags are sorted for has changed
+     * since the keys were generated, for example after the user changed the device language.
+     * Rewrites every row when it does, so must not be called on the main thread.
+     * @param db The open database.
+     */
+    public static void updateSortKeysIfLocaleChanged(@NonNull SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + SORT_LOCALE_TABLE_NAME
+                + " (locale TEXT NOT NULL)");
+        String locale = null;
+        Cursor cursor = db.query("SELECT locale FROM " + SORT_LOCALE_TABLE_NAME);
+        try {
+            if (cursor.moveToFirst()) {
+                locale = cursor.getString(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        if (!ITag.getCollationLocale().toString().equals(locale)) {
+            updateSortKeys(db);
+        }
+    }
+
+    /**
+     * Regenerate the sort_key of every tag for {@link ITag#getCollationLocale()}, and record
+     * that locale.
+     */
+    private static void updateSortKeys(SupportSQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            SupportSQLiteStatement update = db.compileStatement(
+                    "UPDATE tags SET sort_key = ? WHERE id = ?");
+            Cursor cursor = db.query("SELECT id, label FROM tags");
+            try {
+                while (cursor.moveToNext()) {
+                    byte[] sortKey = TagEntity.sortKey(cursor.getString(1));
+                    if (sortKey == null) {
+                        update.bindNull(1);
+                    } else {
+                        update.bindBlob(1, sortKey);
+                    }
+                    update.bindLong(2, cursor.getInt(0));
+                    update.executeUpdateDelete();
+                }
+            } finally {
+                cursor.close();
+            }
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + SORT_LOCALE_TABLE_NAME
+                    + " (locale TEXT NOT NULL)");
+            db.execSQL("DELETE FROM " + SORT_LOCALE_TABLE_NAME);
+            db.execSQL("INSERT INTO " + SORT_LOCALE_TABLE_NAME + " (locale) VALUES (?)",
+                    new Object[]{ITag.getCollationLocale().toString()});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Open the tags database with its migrations and tuning applied.
+     * @param context The context to open the database with.
+     * @param name The name of the database file.
+     * @param config How to tune the database connection.
+     * @return The database.
+     */
+    public static TagDatabase build(@NonNull Context context, @NonNull String name,
+                                    @NonNull Config config) {
+        return Room.databaseBuilder(context, TagDatabase.class, name)
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
+                        MIGRATION_5_6)
+                .openHelperFactory(new ConfiguredOpenHelperFactory(config))
+                .build();
+    }
+
     public abstract TagDao tagDao();
+
+
+    /**
+     * How the SQLite connection behind a {@link TagDatabase} is tuned. Use a {@link Builder}
+     * to change any of the {@link #DEFAULT} settings.
+     * <p>
+     *     Write ahead logging and the statement cache apply to every connection. The page
+     *     cache, memory mapping and synchronous level are set with pragmas on the primary
+     *     connection, which does all the writing. Any extra reader connections opened for
+     *     write ahead logging keep the platform defaults for those.
+     * </p>
+     */
+    public static final class Config {
+
+        /**
+         * How often SQLite waits for data to reach the disk.
+         */
+        public enum Synchronous {
+            /** Never. A power loss may corrupt the database. */
+            OFF,
+            /** At checkpoints only when using write ahead logging. A power loss may roll
+             * back the last transactions but never corrupts the database. */
+            NORMAL,
+            /** After every transaction. */
+            FULL
+        }
+
+        /**
+         * Write ahead logging, a 4 MiB page cache, 32 MiB of memory mapped I/O and
+         * {@link Synchronous#NORMAL}, which is safe with write ahead logging.
+         */
+        public static final Config DEFAULT = new Builder().build();
+
+        private final boolean mWriteAheadLogging;
+        private final int mPageCacheKib;
+        private final long mMmapSizeBytes;
+        private final Synchronous mSynchronous;
+        private final int mStatementCacheSize;
+
+        private Config(Builder builder) {
+            mWriteAheadLogging = builder.mWriteAheadLogging;
+            mPageCacheKib = builder.mPageCacheKib;
+            mMmapSizeBytes = builder.mMmapSizeBytes;
+            mSynchronous = builder.mSynchronous;
+            mStatementCacheSize = builder.mStatementCacheSize;
+        }
+
+        public boolean isWriteAheadLogging() {
+            return mWriteAheadLogging;
+        }
+
+        public int getPageCacheKib() {
+            return mPageCacheKib;
+        }
+
+        public long getMmapSizeBytes() {
+            return mMmapSizeBytes;
+        }
+
+        public Synchronous getSynchronous() {
+            return mSynchronous;
+        }
+
+        public int getStatementCacheSize() {
+            return mStatementCacheSize;
+        }
+
+        @Override
+        public String toString() {
+            return "Config[wal=" + mWriteAheadLogging
+                    + ", pageCache=" + mPageCacheKib + "KiB"
+                    + ", mmap=" + mMmapSizeBytes / 1024 + "KiB"
+                    + ", synchronous=" + mSynchronous
+                    + ", statementCache=" + mStatementCacheSize + "]";
+        }
+
+        /**
+         * Builds a {@link Config}, starting from the {@link #DEFAULT} settings.
+         */
+        public static final class Builder {
+
+            /**
+             * The most statements the platform will cache per connection.
+             */
+            private static final int MAX_STATEMENT_CACHE_SIZE = 100;
+
+            private boolean mWriteAheadLogging = true;
+            private int mPageCacheKib = 4096;
+            private long mMmapSizeBytes = 32L * 1024 * 1024;
+            private Synchronous mSynchronous = Synchronous.NORMAL;
+            private int mStatementCacheSize = 50;
+
+            /**
+             * @param enabled True to let reads run alongside a write.
+             */
+            public Builder setWriteAheadLogging(boolean enabled) {
+                mWriteAheadLogging = enabled;
+                return this;
+            }
+
+            /**
+             * @param kib The most memory used to cache database pages, in KiB.
+             */
+            public Builder setPageCacheKib(int kib) {
+                if (kib < 0) {
+                    throw new IllegalArgumentException("Page cache cannot be negative: " + kib);
+                }
+                mPageCacheKib = kib;
+                return this;
+            }
+
+            /**
+             * @param bytes How much of the database file to memory map, or 0 to read it with
+             *              regular I/O. Ignored before SQLite 3.7.17 (API 21).
+             */
+            public Builder setMmapSizeBytes(long bytes) {
+                if (bytes < 0) {
+                    throw new IllegalArgumentException("Mmap size cannot be negative: " + bytes);
+                }
+                mMmapSizeBytes = bytes;
+                return this;
+            }
+
+            public Builder setSynchronous(@NonNull Synchronous synchronous) {
+                mSynchronous = synchronous;
+                return this;
+            }
+
+            /**
+             * @param size The number of compiled statements to keep per connection, at most
+             *             100.
+             */
+            public Builder setStatementCacheSize(int size) {
+                if (size < 0 || size > MAX_STATEMENT_CACHE_SIZE) {
+                    throw new IllegalArgumentException("Statement cache size must be between 0"
+                            + " and " + MAX_STATEMENT_CACHE_SIZE + ": " + size);
+                }
+                mStatementCacheSize = size;
+                return this;
+            }
+
+            public Config build() {
+                return new Config(this);
+            }
+        }
+    }
 }
@@ -1,22 +1,49 @@
 package com.amandariu.tagger.demo.data.source.local.db;
 
+import android.arch.persistence.room.ColumnInfo;
 import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
 import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.Nullable;
+
 import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.demo.data.Tag;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
 
 /**
  * Represents a single table row in the tags database.
  *
  * @author amandariu (11/12/17)
  */
-@Entity(tableName = "tags")
+@Entity(tableName = "tags", indices = {@Index("sort_key")})
 public class TagEntity {
 
+    /**
+     * The combining marks left behind by decomposing accented letters.
+     */
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{Mn}+");
+
     @PrimaryKey
     private int id;
 
     private String label;
     private String color;
+    //
+    // The label normalized for matching.
+    @ColumnInfo(name = "label_key")
+    private String labelKey;
+    //
+    // The bytes of the label's ITag collation key, so ordering by this column gives the same
+    // order as sorting the tags in memory. Indexed so pages can be read in order.
+    @ColumnInfo(name = "sort_key")
+    private byte[] sortKey;
+    //
+    // The color parsed when the tag is written, so it is never parsed when displayed.
+    @ColumnInfo(name = "color_int")
+    private int colorInt;
 
     public TagEntity() {
     }
@@ -25,6 +52,43 @@ public class TagEntity {
         this.id = tag.getId();
         this.label = tag.getLabel();
         this.color = tag.getColor();
+        this.labelKey = normalizeLabel(tag.getLabel());
+        this.colorInt = Tag.parseColor(tag.getColor());
+        this.sortKey = sortKey(tag.getLabel());
+    }
+
+    /**
+     * Generate the sort_key for a label. Only valid while {@link ITag#getCollationLocale()}
+     * is the locale the stored keys were generated for.
+     * @param label The label.
+     * @return The bytes of the label's collation key.
+     */
+    @Nullable
+    public static byte[] sortKey(@Nullable String label) {
+        return label == null ? null : ITag.collationKey(label).toByteArray();
+    }
+
+    /**
+     * Normalize a label or search query so it can be compared with the label_key column.
+     * The text is lowercased and accents are removed, so "Café" and "cafe" are equal.
+     * @param label The label to normalize.
+     * @return The normalized label.
+     */
+    @Nullable
+    public static String normalizeLabel(@Nullable String label) {
+        if (label == null) {
+            return null;
+        }
+        String key = label.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) >= 128) {
+                //
+                // Only labels with non-ASCII characters can have accents to fold.
+                String decomposed = Normalizer.normalize(key, Normalizer.Form.NFD);
+                return COMBINING_MARKS.matcher(decomposed).replaceAll("");
+            }
+        }
+        return key;
     }
 
     public int getId() {
@@ -50,4 +114,28 @@ public class TagEntity {
     public void setColor(String color) {
         this.color = color;
     }
+
+    public String getLabelKey() {
+        return labelKey;
+    }
+
+    public void setLabelKey(String labelKey) {
+        this.labelKey = labelKey;
+    }
+
+    public byte[] getSortKey() {
+        return sortKey;
+    }
+
+    public void setSortKey(byte[] sortKey) {
+        this.sortKey = sortKey;
+    }
+
+    public int getColorInt() {
+        return colorInt;
+    }
+
+    public void setColorInt(int colorInt) {
+        this.colorInt = colorInt;
+    }
 }
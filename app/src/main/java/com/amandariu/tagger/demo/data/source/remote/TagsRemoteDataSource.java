@@ -1,6 +1,9 @@
 package com.amandariu.tagger.demo.data.source.remote;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import com.amandariu.tagger.ITag;
@@ -8,17 +11,31 @@ import com.amandariu.tagger.demo.R;
 import com.amandariu.tagger.demo.TaggerApplication;
 import com.amandariu.tagger.demo.data.Tag;
 import com.amandariu.tagger.demo.data.source.ITagsDataSource;
+import com.amandariu.tagger.demo.data.source.TagsDelta;
 import com.amandariu.tagger.demo.utils.HttpUtils;
+import com.bluelinelabs.logansquare.JsonMapper;
+import com.bluelinelabs.logansquare.LoganSquare;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.github.aurae.retrofit2.LoganSquareConverterFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import okhttp3.Cache;
 import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -28,6 +45,12 @@ import retrofit2.http.GET;
 /**
  * Gateway for working with the remote API to load tags. Defines the remote API endpoint and exposes
  * methods for fetching tags.
+ * <p>
+ *     Responses are kept in an on-disk HTTP cache, so a repeated request is revalidated with
+ *     the ETag / Last-Modified of the cached copy and an unchanged catalog costs a single
+ *     304 round trip. Callers implementing {@link IConditionalLoadTagsCallback} are then told
+ *     the tags are unchanged, and the cached body is never parsed.
+ * </p>
  *
  * @author Amanda Riu
  */
@@ -35,19 +58,72 @@ public class TagsRemoteDataSource implements ITagsDataSource {
 
     private static final String TAG = TagsRemoteDataSource.class.getSimpleName();
     private static final String BASE_URL = "https://gist.githubusercontent.com";
+    private static final String HTTP_CACHE_DIR = "http";
+
+    /**
+     * The largest tags response we expect to download.
+     */
+    private static final long MAX_CATALOG_SIZE = 100 * 1024 * 1024;
+
+    /**
+     * The HTTP cache must hold a whole response with room to spare, or OkHttp evicts it as
+     * soon as it is written and every request downloads the catalog again.
+     */
+    private static final long HTTP_CACHE_SIZE = MAX_CATALOG_SIZE + MAX_CATALOG_SIZE / 4;
+
+    /**
+     * The number of tags parsed before they are handed to a batch callback.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Parsing pauses while this many batches are not done, which bounds the memory used by a
+     * large download. A batch is done once the callback has finished with it, which for the
+     * repository is once it is written to the database.
+     */
+    private static final int MAX_PENDING_BATCHES = 4;
+
+    /**
+     * How long parsing waits for a batch to be done before giving up on the download.
+     */
+    private static final long PENDING_BATCH_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Runs Retrofit callbacks on the OkHttp thread that made the call, so responses are
+     * parsed off the main thread.
+     */
+    private static final Executor CALLING_THREAD_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
 
     private TagsRemoteApi mApi;
+    private Cache mCache;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
 
     interface TagsRemoteApi {
         @GET("/jgritman/7f2e89d1937ba9d9fc678f4c9844cbf1/raw/729eecaacbe749fbeeb891cc430d55235aa8036a/tags.json")
-        Call<List<Tag>> getTags();
+        Call<ResponseBody> getTags();
     }
 
     /**
      * Singleton. Initialize the HttpClient and build the api.
      */
     public TagsRemoteDataSource() {
+        this(BASE_URL, new File(TaggerApplication.getInstance().getCacheDir(), HTTP_CACHE_DIR));
+    }
+
+    /**
+     * Initialize the HttpClient and build the api.
+     *
+     * @param baseUrl The url of the remote API.
+     * @param cacheDir The directory for the HTTP cache.
+     */
+    @VisibleForTesting
+    TagsRemoteDataSource(@NonNull String baseUrl, @NonNull File cacheDir) {
         Log.v(TAG, "Initializing the Remote Tag Datasource");
         //
         // Singleton.
@@ -55,6 +131,8 @@ public class TagsRemoteDataSource implements ITagsDataSource {
         OkHttpClient.Builder clientBuilder = HttpUtils.getTrustAllOkHttpClientBuilder();
         clientBuilder.connectTimeout(30, TimeUnit.SECONDS);
         clientBuilder.readTimeout(60, TimeUnit.SECONDS);
+        mCache = new Cache(cacheDir, HTTP_CACHE_SIZE);
+        clientBuilder.cache(mCache);
         clientBuilder.addNetworkInterceptor(new Interceptor() {
             @Override
             public okhttp3.Response intercept(@NonNull Chain chain) throws IOException {
@@ -77,9 +155,10 @@ public class TagsRemoteDataSource implements ITagsDataSource {
         //
         // Create our retrofit ContentApi
         Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(BASE_URL)
+                .baseUrl(baseUrl)
                 .addConverterFactory(LoganSquareConverterFactory.create())
                 .client(clientBuilder.build())
+                .callbackExecutor(CALLING_THREAD_EXECUTOR)
                 .build();
 
         mApi = retrofit.create(TagsRemoteApi.class);
@@ -87,54 +166,243 @@ public class TagsRemoteDataSource implements ITagsDataSource {
 
 
     /**
-     * Asynchronously load tags from the remote API.
+     * Asynchronously load tags from the remote API. The response is parsed as it downloads,
+     * and the callback is notified on the main thread.
      *
-     * @param callback The callback to send the loaded tags to.
+     * @param callback The callback to send the loaded tags to. If it implements
+     *                 {@link IConditionalLoadTagsCallback} and the tags are unchanged since the
+     *                 last request, {@link IConditionalLoadTagsCallback#onTagsNotModified()}
+     *                 is called instead of parsing the tags again. If it implements
+     *                 {@link IBatchLoadTagsCallback}, the tags are delivered in batches.
      */
     @Override
     public void getTags(@NonNull final ILoadTagsCallback callback) {
         Log.d(TAG, "Processing request to get tags from the remote API");
         final long startTime = System.nanoTime();
 
-        Call<List<Tag>> call = mApi.getTags();
-        call.enqueue(new Callback<List<Tag>>() {
+        Call<ResponseBody> call = mApi.getTags();
+        call.enqueue(new Callback<ResponseBody>() {
             @Override
-            public void onResponse(@NonNull Call<List<Tag>> call, @NonNull Response<List<Tag>> response) {
+            public void onResponse(@NonNull Call<ResponseBody> call,
+                                   @NonNull Response<ResponseBody> response) {
                 if (response.isSuccessful()) {
-                    List<Tag> tags = response.body();
-                    callback.onTagsLoaded(tags);
-                } else {
-                    Log.e(TAG, "Error getting tags from remote API: " + response.errorBody());
+                    ResponseBody body = response.body();
+                    if (isNotModified(response.raw())
+                            && callback instanceof IConditionalLoadTagsCallback) {
+                        Log.d(TAG, "Tags are not modified since the last request");
+                        closeQuietly(body);
+                        mMainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                ((IConditionalLoadTagsCallback) callback).onTagsNotModified();
+                            }
+                        });
+                        return;
+                    }
                     try {
-                        @SuppressWarnings("ConstantConditions")
-                        final String msg = response.errorBody().string();
-                        callback.onDataNotAvailable(msg);
+                        //noinspection ConstantConditions
+                        parseTags(body.byteStream(), callback);
                     } catch (IOException io) {
-                        callback.onDataNotAvailable(
-                                TaggerApplication.getInstance().getString(R.string.error_remote_api));
+                        Log.e(TAG, "Error parsing tags from remote API", io);
+                        postDataNotAvailable(callback, TaggerApplication.getInstance()
+                                .getString(R.string.error_remote_api));
+                    } catch (InterruptedException e) {
+                        Log.w(TAG, "Interrupted while streaming tags from the remote API");
+                        Thread.currentThread().interrupt();
+                        postDataNotAvailable(callback, TaggerApplication.getInstance()
+                                .getString(R.string.error_remote_api));
+                    } finally {
+                        closeQuietly(body);
                     }
                     long elapsedTime = System.nanoTime() - startTime;
                     Log.d(TAG, "Total time to pull tags from remote API ["
-                            + TimeUnit.NANOSECONDS.toSeconds(elapsedTime) + "] seconds");
+                            + TimeUnit.NANOSECONDS.toMillis(elapsedTime) + "] ms");
+                } else {
+                    Log.e(TAG, "Error getting tags from remote API: " + response.errorBody());
+                    String msg;
+                    try {
+                        //noinspection ConstantConditions
+                        msg = response.errorBody().string();
+                    } catch (IOException io) {
+                        msg = TaggerApplication.getInstance().getString(R.string.error_remote_api);
+                    }
+                    postDataNotAvailable(callback, msg);
                 }
             }
 
             @Override
-            public void onFailure(@NonNull Call<List<Tag>> call, @NonNull Throwable t) {
+            public void onFailure(@NonNull Call<ResponseBody> call, @NonNull Throwable t) {
                 Log.e(TAG, "Error getting tags from remote API: " + t.getMessage());
-                callback.onDataNotAvailable(t.getLocalizedMessage());
+                postDataNotAvailable(callback, String.valueOf(t.getLocalizedMessage()));
             }
         });
     }
 
+    /**
+     * Parse the tags from the response body as it downloads. The body is read one tag at a
+     * time, so a {@link IBatchLoadTagsCallback} receives each batch of {@link #BATCH_SIZE}
+     * tags as soon as it has been read. No more than {@link #MAX_PENDING_BATCHES} batches are
+     * ever in memory waiting to be done, however slowly the callback handles them. Other
+     * callbacks receive the whole list at the end.
+     */
+    private void parseTags(@NonNull InputStream in, @NonNull final ILoadTagsCallback callback)
+            throws IOException, InterruptedException {
+        final IBatchLoadTagsCallback batchCallback = callback instanceof IBatchLoadTagsCallback
+                ? (IBatchLoadTagsCallback) callback : null;
+        final Semaphore pendingBatches = new Semaphore(MAX_PENDING_BATCHES);
+        JsonMapper<Tag> mapper = LoganSquare.mapperFor(Tag.class);
+        JsonParser parser = LoganSquare.JSON_FACTORY.createParser(in);
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected an array of tags");
+            }
+            List<Tag> tags = new ArrayList<>(BATCH_SIZE);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                Tag tag = mapper.parse(parser);
+                //
+                // Parse the color here, off the main thread, so the tag lists never have to.
+                tag.preparseColor();
+                tags.add(tag);
+                if (batchCallback != null && tags.size() == BATCH_SIZE) {
+                    acquireBatchPermit(pendingBatches);
+                    postBatch(batchCallback, tags, pendingBatches);
+                    tags = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("Unexpected " + parser.getCurrentToken() + " in tags");
+            }
+
+            final List<Tag> remaining = tags;
+            if (batchCallback == null) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onTagsLoaded(remaining);
+                    }
+                });
+                return;
+            }
+            if (!remaining.isEmpty()) {
+                acquireBatchPermit(pendingBatches);
+                postBatch(batchCallback, remaining, pendingBatches);
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    batchCallback.onTagsComplete();
+                }
+            });
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static void acquireBatchPermit(@NonNull Semaphore pendingBatches)
+            throws IOException, InterruptedException {
+        if (!pendingBatches.tryAcquire(PENDING_BATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IOException("Timed out waiting for tag batches to be handled");
+        }
+    }
+
+    private void postBatch(@NonNull final IBatchLoadTagsCallback callback,
+                           @NonNull final List<Tag> batch,
+                           @NonNull final Semaphore pendingBatches) {
+        final BatchPermit permit = new BatchPermit(pendingBatches);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callback.onTagsBatch(batch, permit);
+                } catch (RuntimeException e) {
+                    permit.run();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Releases a batch's permit the first time it is run, however many times that is.
+     */
+    private static final class BatchPermit implements Runnable {
+        private final Semaphore mPendingBatches;
+        private final AtomicBoolean mReleased = new AtomicBoolean();
+
+        BatchPermit(@NonNull Semaphore pendingBatches) {
+            mPendingBatches = pendingBatches;
+        }
+
+        @Override
+        public void run() {
+            if (mReleased.compareAndSet(false, true)) {
+                mPendingBatches.release();
+            }
+        }
+    }
+
+    /**
+     * @return True if the response is the cached copy, either because the server answered
+     * 304 Not Modified or because the cached copy is still fresh.
+     */
+    private static boolean isNotModified(@NonNull okhttp3.Response response) {
+        okhttp3.Response networkResponse = response.networkResponse();
+        return networkResponse == null
+                || networkResponse.code() == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    private void postDataNotAvailable(@NonNull final ILoadTagsCallback callback,
+                                      @NonNull final String msg) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onDataNotAvailable(msg);
+            }
+        });
+    }
+
+    private static void closeQuietly(ResponseBody body) {
+        if (body != null) {
+            body.close();
+        }
+    }
+
     @Override
     public void saveTags(@NonNull List<? extends ITag> tags, @NonNull ISaveTagsCallback callback) {
         // do nothing
     }
 
+    @Override
+    public void applyDelta(@NonNull TagsDelta delta, @NonNull ISaveTagsCallback callback) {
+        // do nothing
+    }
+
+    @Override
+    public void warmUp() {
+        Cache cache = mCache;
+        if (cache == null) {
+            return;
+        }
+        //
+        // Read the cache journal now rather than when the first request is made.
+        try {
+            cache.initialize();
+        } catch (IOException e) {
+            Log.w(TAG, "Error initializing the HTTP cache", e);
+        }
+    }
+
     @Override
     public void shutdown() {
         Log.v(TAG, "Shutting down the remote tags datasource");
         mApi = null;
+        if (mCache != null) {
+            try {
+                mCache.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing the HTTP cache", e);
+            }
+        }
+        mCache = null;
     }
-}
\ No newline at end of file
+}
@@ -2,7 +2,6 @@ package com.amandariu.tagger.demo.main;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
@@ -17,9 +16,10 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.TagIdsKt;
 import com.amandariu.tagger.TaggerActivity;
 import com.amandariu.tagger.demo.R;
-import com.amandariu.tagger.demo.Injection;
+import com.amandariu.tagger.demo.TaggerApplication;
 import com.amandariu.tagger.demo.utils.AlertUtils;
 import com.amandariu.tagger.demo.utils.AndroidUtils;
 import com.amandariu.tagger.demo.utils.EspressoIdlingResource;
@@ -31,6 +31,11 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
 
     private static final String TAG = MainActivity.class.getSimpleName();
 
+    private static final String STATE_SELECTED_TAG_IDS =
+            "com.amandariu.tagger.demo.SELECTED-TAG-IDS";
+    private static final String STATE_SHOWING_AVAILABLE_TAGS =
+            "com.amandariu.tagger.demo.SHOWING-AVAILABLE-TAGS";
+
     private MainContract.Presenter mPresenter;
     //
     // View components
@@ -46,7 +51,7 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
         setContentView(R.layout.activity_main);
         //
         // Create the presenter
-        new MainPresenter(Injection.provideTagsRepository(getApplicationContext()), this);
+        new MainPresenter(TaggerApplication.getInstance().getTagsRepository(), this);
         //
         // Initialize View Components
         //
@@ -87,48 +92,25 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
 
         if (savedInstanceState != null) {
             //
-            // Restore any selected tags saved during configuration change.
-            final List<ITag> selectedTags = new ArrayList<>();
-            Parcelable[] pSelTags = savedInstanceState
-                    .getParcelableArray(TaggerActivity.ARG_SELECTED_TAGS);
-            if (pSelTags != null && pSelTags.length > 0) {
-                for (Parcelable t : pSelTags) {
-                    selectedTags.add((ITag)t);
-                }
-                setSelectedTags(selectedTags);
-            }
-            //
-            // Restore available tags saved during configuration change
-            Parcelable[] pAvaTags = savedInstanceState
-                    .getParcelableArray(TaggerActivity.ARG_AVAILABLE_TAGS);
-            if (pAvaTags != null && pAvaTags.length > 0) {
-                List<ITag> tags = new ArrayList<>(pAvaTags.length);
-                for (Parcelable t : pAvaTags) {
-                    tags.add((ITag) t);
-                }
-                setAvailableTags(tags);
-            }
+            // The tags stay cached in the repository, so only the selected ids were saved.
+            mPresenter.restoreTags(
+                    savedInstanceState.getIntArray(STATE_SELECTED_TAG_IDS),
+                    savedInstanceState.getBoolean(STATE_SHOWING_AVAILABLE_TAGS));
         }
     }
 
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         //
-        // Save selected tags
+        // Save the ids of the selected tags
         final List<ITag> selectedTags = mSelectedTagsAdapter.getTags();
         if (selectedTags.size() > 0) {
-            outState.putParcelableArray(
-                    TaggerActivity.ARG_SELECTED_TAGS,
-                    selectedTags.toArray(new ITag[selectedTags.size()]));
+            outState.putIntArray(STATE_SELECTED_TAG_IDS, TagIdsKt.tagIds(selectedTags));
         }
         //
-        // Save available tags
-        final List<ITag> availableTags = mAvailableTagsAdapter.getTags();
-        if (availableTags.size() > 0) {
-            outState.putParcelableArray(
-                    TaggerActivity.ARG_AVAILABLE_TAGS,
-                    availableTags.toArray(new ITag[availableTags.size()]));
-        }
+        // The available tags are loaded from the repository again
+        outState.putBoolean(STATE_SHOWING_AVAILABLE_TAGS,
+                mAvailableTagsAdapter.getItemCount() > 0);
         super.onSaveInstanceState(outState);
     }
 
@@ -141,6 +123,11 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
 
     @Override
     protected void onDestroy() {
+        //
+        // Keep the repository and its cache across configuration changes.
+        if (isFinishing() && !isChangingConfigurations()) {
+            mPresenter.shutdown();
+        }
         mPresenter.destroyView();
         mViewLoading = null;
         mAvailableTagsAdapter = null;
@@ -188,6 +175,19 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
         }
     }
 
+    /**
+     * Add to the available tags shown while the rest are still loading.
+     * @param tags The tags added since the view was last updated.
+     */
+    @Override
+    public void addAvailableTags(@NonNull List<? extends ITag> tags) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        mAvailableTagsAdapter.addTags(tags);
+        showNoAvailableTags(false);
+    }
+
     /**
      * Update the view with the selected tags provided. These are the tags
      * the user selected using the custom Tag selector.
@@ -312,14 +312,9 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == TaggerActivity.REQUEST_CODE) {
             if (resultCode == RESULT_OK) {
-                Parcelable[] pSelTags
-                        = data.getParcelableArrayExtra(TaggerActivity.ARG_SELECTED_TAGS);
-                if (pSelTags != null && pSelTags.length > 0) {
-                    final List<ITag> selectedTags = new ArrayList<>();
-                    for (Parcelable p : pSelTags) {
-                        selectedTags.add((ITag)p);
-                    }
-                    setSelectedTags(selectedTags);
+                final List<ITag> selectedTags = TaggerActivity.getSelectedTags(data);
+                if (selectedTags != null) {
+                    mPresenter.onTagsSelected(selectedTags);
                 }
             }
         }
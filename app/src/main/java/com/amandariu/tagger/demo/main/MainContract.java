@@ -33,6 +33,12 @@ interface MainContract {
          */
         void setAvailableTags(@Nullable List<? extends ITag> tags);
 
+        /**
+         * Add to the available tags shown while the rest are still loading.
+         * @param tags The tags added since the view was last updated.
+         */
+        void addAvailableTags(@NonNull List<? extends ITag> tags);
+
         /**
          * Update the view with the selected tags provided. These are the tags
          * the user selected using the custom Tag selector.
@@ -73,6 +79,26 @@ interface MainContract {
          */
         void loadTags(boolean forceUpdate);
 
+        /**
+         * The user is leaving the app, not just recreating the view. Shut down the
+         * repository. Must be called before {@link #destroyView()}.
+         */
+        void shutdown();
+
+        /**
+         * Restore the tags after the view was recreated. Only the ids of the selected tags are
+         * saved, the tags themselves are looked up in the repository again.
+         * @param selectedTagIds The ids of the selected tags, or null if none were selected.
+         * @param showAvailableTags True if the view was showing the available tags.
+         */
+        void restoreTags(@Nullable int[] selectedTagIds, boolean showAvailableTags);
+
+        /**
+         * The user picked tags with the custom Tag selector.
+         * @param tags The tags the user selected.
+         */
+        void onTagsSelected(@NonNull List<? extends ITag> tags);
+
         /**
          * Explicitly load the tags from the local database.
          */
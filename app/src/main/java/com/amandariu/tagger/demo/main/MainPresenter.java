@@ -3,21 +3,29 @@ package com.amandariu.tagger.demo.main;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.TagIdsKt;
 import com.amandariu.tagger.TaggerActivity;
 import com.amandariu.tagger.demo.R;
+import com.amandariu.tagger.demo.TaggerApplication;
 import com.amandariu.tagger.demo.common.NetworkUtils;
 import com.amandariu.tagger.demo.data.source.ISourceBase;
 import com.amandariu.tagger.demo.data.source.ITagRepository;
 import com.amandariu.tagger.demo.data.source.ITagsDataSource;
-import com.amandariu.tagger.demo.data.source.TagsRepository;
 import com.amandariu.tagger.demo.utils.EspressoIdlingResource;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -31,20 +39,99 @@ public class MainPresenter implements MainContract.Presenter {
 
     private static final String TAG = MainPresenter.class.getSimpleName();
 
+    /**
+     * Catalogs at least this large are loaded by the tag picker a page at a time instead of
+     * being passed to it in full.
+     */
+    private static final int PAGED_PICKER_THRESHOLD = 1000;
+
+    private static final Executor MAIN_THREAD_EXECUTOR = new Executor() {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mHandler.post(command);
+        }
+    };
+
+    /**
+     * True once any presenter in this process has shown tags, so only the cold start is
+     * timed.
+     */
+    private static boolean sFirstTagsShown = false;
+
+    /**
+     * Null until the repository is ready.
+     */
     private ITagRepository mRepo;
     private MainContract.View mView;
-    private final ISourceBase.ILoadTagsCallback mGetAvailableTagsCallback;
+
+    /**
+     * Set once the view is destroyed. Fetches started by this presenter may outlive the view,
+     * since the repository stays open across configuration changes, and their late results
+     * must be ignored.
+     */
+    private boolean mDetached = false;
+    private final ISourceBase.IIncrementalLoadTagsCallback mGetAvailableTagsCallback;
+
+    /**
+     * Work waiting for the repository to be ready.
+     */
+    private final List<Runnable> mPendingRepoActions = new ArrayList<>();
+
+    /**
+     * The number of pending actions that incremented the {@link EspressoIdlingResource}.
+     */
+    private int mPendingBusyActions = 0;
 
     private boolean mFirstLoad = true;
 
-    MainPresenter(@NonNull TagsRepository repo, @NonNull MainContract.View view) {
-        this.mRepo = checkNotNull(repo, "TagsRepository cannot be null!");
+    /**
+     * The ids of the selected tags waiting to be restored, or null.
+     */
+    private int[] mPendingSelectedTagIds;
+
+    /**
+     * @param repo The repository, which may still be opening on a background thread. Any
+     *             requests for tags are held until it is ready.
+     * @param view The view to present to.
+     */
+    MainPresenter(@NonNull ListenableFuture<? extends ITagRepository> repo,
+                  @NonNull MainContract.View view) {
+        checkNotNull(repo, "TagsRepository cannot be null!");
         this.mView = checkNotNull(view, "View cannot be null!");
         this.mView.setPresenter(this);
-        mGetAvailableTagsCallback = new ITagsDataSource.ILoadTagsCallback() {
+        Futures.addCallback(repo, new FutureCallback<ITagRepository>() {
+            @Override
+            public void onSuccess(ITagRepository result) {
+                if (mView == null) {
+                    //
+                    // The view was destroyed while the repository was opening.
+                    return;
+                }
+                mRepo = result;
+                for (Runnable action : mPendingRepoActions) {
+                    action.run();
+                }
+                mPendingRepoActions.clear();
+                mPendingBusyActions = 0;
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable t) {
+                Log.e(TAG, "Unable to open the tags repository", t);
+                dropPendingRepoActions();
+                if (isViewActive()) {
+                    mView.setLoadingIndicator(false);
+                    mView.showError(t.getMessage() == null ? t.toString() : t.getMessage());
+                }
+            }
+        }, MAIN_THREAD_EXECUTOR);
+        mGetAvailableTagsCallback = new ITagsDataSource.IIncrementalLoadTagsCallback() {
 
             @Override
             public void onTagsLoaded(List<? extends ITag> tags) {
+                logFirstTagsShown(tags.size());
                 //
                 // This callback may be called twice, once for cache and once for loading
                 // the data from the remote API, so we must check before decrementing.
@@ -53,7 +140,7 @@ public class MainPresenter implements MainContract.Presenter {
                 }
                 //
                 // Verify the view is still active
-                if (!mView.isActive()) {
+                if (!isViewActive()) {
                     Log.d(TAG, "Tags have been loaded, but the view is no longer active.");
                     return;
                 }
@@ -63,11 +150,24 @@ public class MainPresenter implements MainContract.Presenter {
                 mView.setAvailableTags(tags);
             }
 
+            @Override
+            public void onTagsAdded(@NonNull List<? extends ITag> added) {
+                logFirstTagsShown(added.size());
+                if (!isViewActive()) {
+                    return;
+                }
+                //
+                // Show each batch as it is synced. The complete list follows once the sync
+                // is done.
+                mView.setLoadingIndicator(false);
+                mView.addAvailableTags(added);
+            }
+
             @Override
             public void onDataNotAvailable(@NonNull String msg) {
                 //
                 // Verify the view is still active
-                if (!mView.isActive()) {
+                if (!isViewActive()) {
                     return;
                 }
                 //
@@ -80,6 +180,22 @@ public class MainPresenter implements MainContract.Presenter {
         };
     }
 
+    /**
+     * @return True if the view this presenter was created for still exists and is active.
+     */
+    private boolean isViewActive() {
+        return !mDetached && mView != null && mView.isActive();
+    }
+
+    private static void logFirstTagsShown(int count) {
+        if (!sFirstTagsShown) {
+            sFirstTagsShown = true;
+            Log.i(TAG, "Time to first tags [" + count + " tags] ["
+                    + TaggerApplication.getInstance().getTimeSinceStart()
+                    + "] ms after application start");
+        }
+    }
+
     /**
      * Initialize the presenter
      */
@@ -89,16 +205,27 @@ public class MainPresenter implements MainContract.Presenter {
     }
 
     /**
-     * The view is being destroyed. Clear any references in the presenter.
+     * The view is being destroyed. Clear any references in the presenter. The repository is
+     * left open, so a view recreated after a configuration change still has its cache.
      */
     @Override
     public void destroyView() {
-        Log.v(TAG, "View is being destroyed. Shut down Repository and Presenter");
+        Log.v(TAG, "View is being destroyed. Shut down Presenter");
+        mDetached = true;
+        mRepo = null;
+        mView = null;
+        dropPendingRepoActions();
+    }
+
+    /**
+     * The user is leaving the app. Shut down the repository.
+     */
+    @Override
+    public void shutdown() {
+        Log.v(TAG, "Shut down Repository");
         if (mRepo != null) {
             mRepo.shutdown();
         }
-        mRepo = null;
-        mView = null;
     }
 
     /**
@@ -111,6 +238,73 @@ public class MainPresenter implements MainContract.Presenter {
         mFirstLoad = false;
     }
 
+    /**
+     * Restore the tags after the view was recreated. Only the ids of the selected tags are
+     * saved, the tags themselves are looked up in the repository again, which normally has
+     * them cached.
+     * @param selectedTagIds The ids of the selected tags, or null if none were selected.
+     * @param showAvailableTags True if the view was showing the available tags.
+     */
+    @Override
+    public void restoreTags(@Nullable final int[] selectedTagIds,
+                            final boolean showAvailableTags) {
+        mFirstLoad = false;
+        mPendingSelectedTagIds = selectedTagIds;
+        if (selectedTagIds == null && !showAvailableTags) {
+            return;
+        }
+        if (showAvailableTags) {
+            mView.setLoadingIndicator(true);
+            EspressoIdlingResource.increment();
+        }
+        final ITagsDataSource.ILoadTagsCallback callback =
+                new ITagsDataSource.IIncrementalLoadTagsCallback() {
+            @Override
+            public void onTagsLoaded(List<? extends ITag> tags) {
+                if (showAvailableTags) {
+                    mGetAvailableTagsCallback.onTagsLoaded(tags);
+                }
+                //
+                // Only restore once, and not over a selection the user made since. The
+                // repository may call back again once it revalidates.
+                if (mPendingSelectedTagIds == selectedTagIds && selectedTagIds != null
+                        && isViewActive()) {
+                    mPendingSelectedTagIds = null;
+                    mView.setSelectedTags(TagIdsKt.findTagsById(selectedTagIds, tags));
+                }
+            }
+
+            @Override
+            public void onTagsAdded(@NonNull List<? extends ITag> added) {
+                if (showAvailableTags) {
+                    mGetAvailableTagsCallback.onTagsAdded(added);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable(@NonNull String msg) {
+                if (showAvailableTags) {
+                    mGetAvailableTagsCallback.onDataNotAvailable(msg);
+                }
+            }
+        };
+        whenRepoReady(showAvailableTags, new Runnable() {
+            @Override
+            public void run() {
+                mRepo.getTags(callback);
+            }
+        });
+    }
+
+    /**
+     * The user picked tags with the custom Tag selector.
+     * @param tags The tags the user selected.
+     */
+    @Override
+    public void onTagsSelected(@NonNull List<? extends ITag> tags) {
+        mPendingSelectedTagIds = null;
+        mView.setSelectedTags(tags);
+    }
 
     /**
      * Open the custom Tag selector.
@@ -124,11 +318,19 @@ public class MainPresenter implements MainContract.Presenter {
                            @NonNull List<? extends ITag> availableTags,
                            @Nullable List<? extends ITag> selectedTags) {
 
-        Intent intent = TaggerActivity.createIntent(activity, availableTags, selectedTags);
+        Intent intent;
+        if (availableTags.size() >= PAGED_PICKER_THRESHOLD && mRepo != null
+                && mRepo.getTagPageSource() != null && !mRepo.hasPendingSaves()) {
+            //
+            // The local database holds every tag, so let the picker page through it.
+            intent = TaggerActivity.createPagedIntent(activity, selectedTags);
+        } else {
+            intent = TaggerActivity.createIntent(activity, availableTags, selectedTags);
+        }
         activity.startActivityForResult(intent, TaggerActivity.REQUEST_CODE);
     }
 
-    private void loadTags(boolean forceUpdate, final boolean showLoadingUi) {
+    private void loadTags(final boolean forceUpdate, final boolean showLoadingUi) {
 
         Log.d(TAG, "Loading tags with [forceUpdate = " + forceUpdate
                 + ", showLoadingUi = " + showLoadingUi + "]");
@@ -136,16 +338,50 @@ public class MainPresenter implements MainContract.Presenter {
         if (showLoadingUi) {
             mView.setLoadingIndicator(true);
         }
-        if (forceUpdate) {
-            mRepo.refreshTags();
-        }
         //
         // Testing Only:
         // The network request would be handled on a different thread so make sure
         // espresso knows the app is busy until the response is handled.
         EspressoIdlingResource.increment();
 
-        mRepo.getTags(mGetAvailableTagsCallback);
+        whenRepoReady(true, new Runnable() {
+            @Override
+            public void run() {
+                if (forceUpdate) {
+                    mRepo.refreshTags();
+                }
+                mRepo.getTags(mGetAvailableTagsCallback);
+            }
+        });
+    }
+
+    /**
+     * Run an action now if the repository is ready, else once it is.
+     * @param busy True if the caller incremented the {@link EspressoIdlingResource} for
+     *             this action.
+     * @param action The action to run on the main thread.
+     */
+    private void whenRepoReady(boolean busy, @NonNull Runnable action) {
+        if (mRepo != null) {
+            action.run();
+        } else {
+            mPendingRepoActions.add(action);
+            if (busy) {
+                mPendingBusyActions++;
+            }
+        }
+    }
+
+    /**
+     * Drop the actions waiting for the repository, and release the idling resource for each
+     * one that was holding it.
+     */
+    private void dropPendingRepoActions() {
+        for (int i = 0; i < mPendingBusyActions; i++) {
+            EspressoIdlingResource.decrement();
+        }
+        mPendingBusyActions = 0;
+        mPendingRepoActions.clear();
     }
 
 
@@ -160,7 +396,12 @@ public class MainPresenter implements MainContract.Presenter {
         // espresso knows the app is busy until the response is handled.
         EspressoIdlingResource.increment();
 
-        mRepo.getTagsFromLocalDataSource(mGetAvailableTagsCallback);
+        whenRepoReady(true, new Runnable() {
+            @Override
+            public void run() {
+                mRepo.getTagsFromLocalDataSource(mGetAvailableTagsCallback);
+            }
+        });
     }
 
     /**
@@ -177,6 +418,11 @@ public class MainPresenter implements MainContract.Presenter {
         // espresso knows the app is busy until the response is handled.
         EspressoIdlingResource.increment();
 
-        mRepo.getTagsFromRemoteDataSource(mGetAvailableTagsCallback);
+        whenRepoReady(true, new Runnable() {
+            @Override
+            public void run() {
+                mRepo.getTagsFromRemoteDataSource(mGetAvailableTagsCallback);
+            }
+        });
     }
 }
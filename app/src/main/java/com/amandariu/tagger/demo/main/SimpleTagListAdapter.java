@@ -1,6 +1,10 @@
 package com.amandariu.tagger.demo.main;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -8,9 +12,13 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.TagDiffCallback;
 import com.amandariu.tagger.demo.R;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Simple adapter for displaying tag results in the main test application.
@@ -19,26 +27,136 @@ import java.util.List;
  */
 public class SimpleTagListAdapter extends RecyclerView.Adapter<SimpleTagListAdapter.TagViewHolder> {
 
+    /**
+     * Diffs are calculated off the main thread, one at a time.
+     */
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * Payload for rows that only need their row number updated.
+     */
+    private static final Object PAYLOAD_ROW_NUMBER = new Object();
+
     private final List<ITag> mTags;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    //
+    // The most recent list passed to setTags(...), which may still be waiting on its diff.
+    private List<ITag> mPendingTags = null;
+    private int mUpdateGeneration = 0;
 
     public SimpleTagListAdapter(List<ITag> mTags) {
         this.mTags = mTags;
     }
 
+    /**
+     * Replace the displayed tags. The difference between the old and new list is calculated
+     * on a background thread, then only the rows that changed are updated.
+     *
+     * @param tags The tags to display.
+     */
     public void setTags(@NonNull List<? extends ITag> tags) {
-        mTags.clear();
+        final int generation = ++mUpdateGeneration;
+        final List<ITag> oldTags = new ArrayList<>(mTags);
+        final List<ITag> newTags = new ArrayList<>(tags);
+        mPendingTags = newTags;
+
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result = TagDiffCallback.calculateDiff(oldTags, newTags);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mUpdateGeneration) {
+                            //
+                            // A newer update has been requested since this diff started.
+                            return;
+                        }
+                        mPendingTags = null;
+                        mTags.clear();
+                        mTags.addAll(newTags);
+                        if (result != null) {
+                            dispatchUpdates(result);
+                        } else {
+                            notifyDataSetChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Append tags to the end of the displayed tags. Only the new rows are inserted, so adding
+     * a batch doesn't copy or diff the tags already shown.
+     *
+     * @param tags The tags to add.
+     */
+    public void addTags(@NonNull List<? extends ITag> tags) {
+        if (mPendingTags != null) {
+            //
+            // A diff is still running against the pending list, so queue another update.
+            List<ITag> newTags = new ArrayList<>(mPendingTags.size() + tags.size());
+            newTags.addAll(mPendingTags);
+            newTags.addAll(tags);
+            setTags(newTags);
+            return;
+        }
+        int start = mTags.size();
         mTags.addAll(tags);
-        notifyDataSetChanged();
+        notifyItemRangeInserted(start, tags.size());
+    }
+
+    /**
+     * Dispatch a diff, then renumber the rows after the first change. The diff only reports
+     * inserts, removes and moves, so rows shifted by them would keep their old numbers.
+     */
+    private void dispatchUpdates(@NonNull DiffUtil.DiffResult result) {
+        final int[] firstChanged = {Integer.MAX_VALUE};
+        result.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                firstChanged[0] = Math.min(firstChanged[0], position);
+                notifyItemRangeInserted(position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                firstChanged[0] = Math.min(firstChanged[0], position);
+                notifyItemRangeRemoved(position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                firstChanged[0] = Math.min(firstChanged[0],
+                        Math.min(fromPosition, toPosition));
+                notifyItemMoved(fromPosition, toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                notifyItemRangeChanged(position, count, payload);
+            }
+        });
+        if (firstChanged[0] < mTags.size()) {
+            notifyItemRangeChanged(firstChanged[0], mTags.size() - firstChanged[0],
+                    PAYLOAD_ROW_NUMBER);
+        }
     }
 
     public void clearTags() {
+        ++mUpdateGeneration;
+        mPendingTags = null;
         mTags.clear();
         notifyDataSetChanged();
     }
 
+    /**
+     * @return The tags for this adapter, including any update that is still being applied.
+     */
     @NonNull
     public List<ITag> getTags() {
-        return mTags;
+        return mPendingTags != null ? mPendingTags : mTags;
     }
 
     @Override
@@ -55,6 +173,24 @@ public class SimpleTagListAdapter extends RecyclerView.Adapter<SimpleTagListAdap
         holder.rowNumber.setText(String.valueOf(position + 1));
     }
 
+    @Override
+    public void onBindViewHolder(TagViewHolder holder, int position, List<Object> payloads) {
+        if (!payloads.isEmpty() && allRowNumbers(payloads)) {
+            holder.rowNumber.setText(String.valueOf(position + 1));
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
+    private static boolean allRowNumbers(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_ROW_NUMBER) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public int getItemCount() {
         return mTags.size();
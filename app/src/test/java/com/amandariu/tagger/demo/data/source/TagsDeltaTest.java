@@ -0,0 +1,102 @@
+package com.amandariu.tagger.demo.data.source;
+
+import com.amandariu.tagger.ITag;
+import com.amandariu.tagger.demo.data.Tag;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TagsDelta}.
+ *
+ * @author Amanda Riu
+ */
+public class TagsDeltaTest {
+
+    private static Map<Integer, ITag> byId(ITag... tags) {
+        Map<Integer, ITag> map = new LinkedHashMap<>();
+        for (ITag tag : tags) {
+            map.put(tag.getId(), tag);
+        }
+        return map;
+    }
+
+    @Test
+    public void compute_identicalTags_isEmpty() {
+        Map<Integer, ITag> current = byId(new Tag(1, "apple", "ff0000"),
+                new Tag(2, "banana", "00ff00"));
+        List<Tag> incoming = Arrays.asList(new Tag(1, "apple", "ff0000"),
+                new Tag(2, "banana", "00ff00"));
+
+        assertTrue(TagsDelta.compute(current, incoming).isEmpty());
+    }
+
+    @Test
+    public void compute_findsAddedChangedAndDeleted() {
+        Map<Integer, ITag> current = byId(new Tag(1, "apple", "ff0000"),
+                new Tag(2, "banana", "00ff00"),
+                new Tag(3, "cherry", "0000ff"));
+        Tag renamed = new Tag(2, "plantain", "00ff00");
+        Tag added = new Tag(4, "grape", "ff00ff");
+
+        TagsDelta delta = TagsDelta.compute(current, Arrays.asList(
+                new Tag(1, "apple", "ff0000"), renamed, added));
+
+        assertEquals(Collections.<ITag>singletonList(added), delta.getAdded());
+        assertEquals(Collections.<ITag>singletonList(renamed), delta.getChanged());
+        assertArrayEquals(new int[]{3}, delta.getDeletedIds());
+        assertEquals(3, delta.size());
+    }
+
+    @Test
+    public void compute_emptyIncoming_deletesEverything() {
+        Map<Integer, ITag> current = byId(new Tag(1, "apple", "ff0000"),
+                new Tag(2, "banana", "00ff00"));
+
+        TagsDelta delta = TagsDelta.compute(current, Collections.<ITag>emptyList());
+
+        assertArrayEquals(new int[]{1, 2}, delta.getDeletedIds());
+        assertTrue(delta.getAdded().isEmpty());
+    }
+
+    @Test
+    public void compute_duplicateIds_lastCopyWins() {
+        Tag first = new Tag(1, "apple", "ff0000");
+        Tag last = new Tag(1, "apricot", "ff0000");
+
+        TagsDelta delta = TagsDelta.compute(byId(), Arrays.asList(first, last));
+
+        assertEquals(1, delta.getAdded().size());
+        assertSame(last, delta.getAdded().get(0));
+    }
+
+    @Test
+    public void computeBatch_neverReportsDeletions() {
+        Map<Integer, ITag> current = byId(new Tag(1, "apple", "ff0000"),
+                new Tag(2, "banana", "00ff00"));
+        Tag changed = new Tag(2, "plantain", "00ff00");
+
+        TagsDelta delta = TagsDelta.computeBatch(current, Collections.singletonList(changed));
+
+        assertEquals(Collections.<ITag>singletonList(changed), delta.getChanged());
+        assertEquals(0, delta.getDeletedIds().length);
+    }
+
+    @Test
+    public void deleted_onlyDeletes() {
+        TagsDelta delta = TagsDelta.deleted(Arrays.asList(4, 7));
+
+        assertArrayEquals(new int[]{4, 7}, delta.getDeletedIds());
+        assertEquals(2, delta.size());
+    }
+}
@@ -0,0 +1,47 @@
+package com.amandariu.tagger.demo.data.source.local.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for the label normalization in {@link TagEntity}.
+ *
+ * @author Amanda Riu
+ */
+public class TagEntityTest {
+
+    @Test
+    public void normalizeLabel_lowercasesAscii() {
+        assertEquals("red apple", TagEntity.normalizeLabel("Red APPLE"));
+    }
+
+    @Test
+    public void normalizeLabel_foldsAccents() {
+        assertEquals("cafe creme", TagEntity.normalizeLabel("Caf\u00e9 Cr\u00e8me"));
+        assertEquals("angstrom", TagEntity.normalizeLabel("\u00c5ngstr\u00f6m"));
+    }
+
+    @Test
+    public void normalizeLabel_keepsLettersWithoutAccents() {
+        assertEquals("\u65e5\u672c", TagEntity.normalizeLabel("\u65e5\u672c"));
+    }
+
+    @Test
+    public void normalizeLabel_null_isNull() {
+        assertNull(TagEntity.normalizeLabel(null));
+    }
+
+    @Test
+    public void toContainsPattern_foldsAccentsAndEscapesWildcards() {
+        assertEquals("%ple%", TagDao.toContainsPattern("PLE"));
+        assertEquals("%cafe cr%", TagDao.toContainsPattern("Caf\u00e9 Cr"));
+        assertEquals("%50\\%\\_off%", TagDao.toContainsPattern("50%_off"));
+    }
+
+    @Test
+    public void toContainsPattern_empty_isNull() {
+        assertNull(TagDao.toContainsPattern(""));
+    }
+}
@@ -0,0 +1,95 @@
+package com.amandariu.tagger;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the previous {@code toLowerCase()} comparison with the cached
+ * {@link ITag#getSortKey()} when sorting a large list of tags. Results are written to logcat
+ * under the {@link #TAG} tag.
+ *
+ * @author Amanda Riu
+ */
+@RunWith(AndroidJUnit4.class)
+public class ITagSortBenchmark {
+
+    private static final String TAG = ITagSortBenchmark.class.getSimpleName();
+
+    private static final int TAG_COUNT = 100000;
+    private static final int ITERATIONS = 5;
+
+    /**
+     * The comparison {@link ITag#compareTo(ITag)} used before sort keys were cached.
+     */
+    private static final Comparator<ITag> LOWERCASE_COMPARATOR = new Comparator<ITag>() {
+        @Override
+        public int compare(ITag a, ITag b) {
+            return a.getLabel().toLowerCase().compareTo(b.getLabel().toLowerCase());
+        }
+    };
+
+    @Test
+    public void benchmark_cachedKeysAgainstLowercasing() {
+        List<ITag> tags = createTags();
+        long lowercaseNanos = 0;
+        long keyNanos = 0;
+        List<ITag> keySorted = null;
+        //
+        // The first iteration warms up, which also generates and caches every sort key, and
+        // is not counted.
+        for (int i = 0; i <= ITERATIONS; i++) {
+            List<ITag> lowercaseSorted = new ArrayList<>(tags);
+            long start = System.nanoTime();
+            Collections.sort(lowercaseSorted, LOWERCASE_COMPARATOR);
+            long lowercaseEnd = System.nanoTime();
+
+            keySorted = new ArrayList<>(tags);
+            long keyStart = System.nanoTime();
+            Collections.sort(keySorted);
+            long keyEnd = System.nanoTime();
+            if (i > 0) {
+                lowercaseNanos += lowercaseEnd - start;
+                keyNanos += keyEnd - keyStart;
+            }
+        }
+
+        Log.i(TAG, "Sorting " + TAG_COUNT + " tags with toLowerCase(): ["
+                + millis(lowercaseNanos) + "] ms");
+        Log.i(TAG, "Sorting " + TAG_COUNT + " tags with cached sort keys: ["
+                + millis(keyNanos) + "] ms");
+        for (int i = 1; i < keySorted.size(); i++) {
+            assertTrue(keySorted.get(i - 1).compareTo(keySorted.get(i)) <= 0);
+        }
+    }
+
+    private static double millis(long totalNanos) {
+        return (double) totalNanos / ITERATIONS / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static List<ITag> createTags() {
+        Random random = new Random(7);
+        List<ITag> tags = new ArrayList<>(TAG_COUNT);
+        for (int i = 0; i < TAG_COUNT; i++) {
+            StringBuilder label = new StringBuilder();
+            int length = 4 + random.nextInt(10);
+            for (int c = 0; c < length; c++) {
+                char ch = (char) ('a' + random.nextInt(26));
+                label.append(random.nextInt(4) == 0 ? Character.toUpperCase(ch) : ch);
+            }
+            tags.add(new TagArray.Entry(i, label.toString(), "ff668899"));
+        }
+        return tags;
+    }
+}
@@ -0,0 +1,192 @@
+package com.amandariu.tagger;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the size and speed of parceling tags as a {@link TagArray} against the
+ * {@code Parcelable[]} it replaces. Results are written to logcat under the {@link #TAG} tag.
+ *
+ * @author Amanda Riu
+ */
+@RunWith(AndroidJUnit4.class)
+public class TagArrayBenchmark {
+
+    private static final String TAG = TagArrayBenchmark.class.getSimpleName();
+
+    private static final int TAG_COUNT = 20000;
+    private static final int ITERATIONS = 10;
+    private static final String[] COLORS = {"ff668899", "ffcc3333", "ff33cc33", "ff3333cc",
+            "ffcccc33", "ff33cccc", "ffcc33cc", "ff999999"};
+
+    @Test
+    public void roundTrip_keepsEveryTag() {
+        List<ITag> tags = new ArrayList<>();
+        tags.add(new ParcelTag(1, "Red Apple", "ffff0000"));
+        tags.add(new ParcelTag(2, "Caf\u00e9 cr\u00e8me", "ff00ff00"));
+        tags.add(new ParcelTag(3, "", "ffff0000"));
+        tags.add(new ParcelTag(4, "\u65e5\u672c\u8a9e", "ff0000ff"));
+
+        List<ITag> read = writeAndReadTagArray(tags);
+
+        assertEquals(tags.size(), read.size());
+        for (int i = 0; i < tags.size(); i++) {
+            assertEquals(tags.get(i).getId(), read.get(i).getId());
+            assertEquals(tags.get(i).getLabel(), read.get(i).getLabel());
+            assertEquals(tags.get(i).getColor(), read.get(i).getColor());
+        }
+    }
+
+    @Test
+    public void roundTrip_largePalette() {
+        List<ITag> tags = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tags.add(new ParcelTag(i, "tag " + i, String.format("ff%06x", i)));
+        }
+
+        List<ITag> read = writeAndReadTagArray(tags);
+
+        assertEquals(tags.size(), read.size());
+        assertEquals("ff0003e7", read.get(999).getColor());
+    }
+
+    @Test
+    public void benchmark_sizeAndTimeAgainstParcelableArray() {
+        List<ITag> tags = new ArrayList<>(TAG_COUNT);
+        for (int i = 0; i < TAG_COUNT; i++) {
+            tags.add(new ParcelTag(i, "Tag label " + i, COLORS[i % COLORS.length]));
+        }
+        ITag[] array = tags.toArray(new ITag[tags.size()]);
+        TagArray tagArray = new TagArray(tags);
+
+        int arraySize = 0;
+        int tagArraySize = 0;
+        long arrayWrite = 0;
+        long arrayRead = 0;
+        long tagArrayWrite = 0;
+        long tagArrayRead = 0;
+        //
+        // The first iteration warms up and is not counted.
+        for (int i = 0; i <= ITERATIONS; i++) {
+            Parcel parcel = Parcel.obtain();
+            long start = System.nanoTime();
+            parcel.writeParcelableArray(array, 0);
+            long written = System.nanoTime();
+            arraySize = parcel.dataSize();
+            parcel.setDataPosition(0);
+            Parcelable[] readArray = parcel.readParcelableArray(ParcelTag.class.getClassLoader());
+            long read = System.nanoTime();
+            parcel.recycle();
+            assertEquals(TAG_COUNT, readArray.length);
+            if (i > 0) {
+                arrayWrite += written - start;
+                arrayRead += read - written;
+            }
+
+            parcel = Parcel.obtain();
+            start = System.nanoTime();
+            parcel.writeParcelable(tagArray, 0);
+            written = System.nanoTime();
+            tagArraySize = parcel.dataSize();
+            parcel.setDataPosition(0);
+            TagArray readTagArray = parcel.readParcelable(TagArray.class.getClassLoader());
+            read = System.nanoTime();
+            parcel.recycle();
+            assertEquals(TAG_COUNT, readTagArray.getTags().size());
+            if (i > 0) {
+                tagArrayWrite += written - start;
+                tagArrayRead += read - written;
+            }
+        }
+
+        Log.i(TAG, TAG_COUNT + " tags as Parcelable[]: [" + arraySize + "] bytes, write ["
+                + millis(arrayWrite) + "] ms, read [" + millis(arrayRead) + "] ms");
+        Log.i(TAG, TAG_COUNT + " tags as TagArray: [" + tagArraySize + "] bytes, write ["
+                + millis(tagArrayWrite) + "] ms, read [" + millis(tagArrayRead) + "] ms");
+        assertTrue("TagArray took " + tagArraySize + " bytes, Parcelable[] " + arraySize,
+                tagArraySize * 3 < arraySize);
+    }
+
+    private static List<ITag> writeAndReadTagArray(List<ITag> tags) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(new TagArray(tags), 0);
+            parcel.setDataPosition(0);
+            TagArray read = parcel.readParcelable(TagArray.class.getClassLoader());
+            return read.getTags();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static double millis(long totalNanos) {
+        return (double) totalNanos / ITERATIONS / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Parcels itself the way an app's tags usually do, one field at a time.
+     */
+    public static class ParcelTag extends ITag {
+
+        public static final Creator<ParcelTag> CREATOR = new Creator<ParcelTag>() {
+            @Override
+            public ParcelTag createFromParcel(Parcel in) {
+                return new ParcelTag(in.readInt(), in.readString(), in.readString());
+            }
+
+            @Override
+            public ParcelTag[] newArray(int size) {
+                return new ParcelTag[size];
+            }
+        };
+
+        private final int mId;
+        private final String mLabel;
+        private final String mColor;
+
+        ParcelTag(int id, String label, String color) {
+            mId = id;
+            mLabel = label;
+            mColor = color;
+        }
+
+        @Override
+        public int getId() {
+            return mId;
+        }
+
+        @Override
+        public String getLabel() {
+            return mLabel;
+        }
+
+        @Override
+        public String getColor() {
+            return mColor;
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            dest.writeInt(mId);
+            dest.writeString(mLabel);
+            dest.writeString(mColor);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.amandariu.tagger;
+
+import android.os.Debug;
+import android.os.Parcel;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.rule.UiThreadTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.widget.FrameLayout;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Instrumented tests for the bind path of {@link TagChipsAdapter}.
+ *
+ * @author Amanda Riu
+ */
+@RunWith(AndroidJUnit4.class)
+public class TagChipsAdapterTest {
+
+    private static final int BIND_COUNT = 500;
+
+    /**
+     * Allowance for one-off allocations by the framework, such as the view invalidating
+     * itself. It doesn't grow with {@link #BIND_COUNT}, so a single allocation per bind fails.
+     */
+    private static final int MAX_ALLOCATIONS = 32;
+
+    @Rule
+    public UiThreadTestRule mUiThreadTestRule = new UiThreadTestRule();
+
+    @Test
+    @UiThreadTest
+    public void bind_doesNotAllocatePerBind() throws Exception {
+        List<ITag> tags = new ArrayList<>();
+        for (int i = 0; i < BIND_COUNT; i++) {
+            tags.add(new ChipTag(i, "tag " + i));
+        }
+        TagChipsAdapter adapter = new TagChipsAdapter(tags, null);
+        FrameLayout parent = new FrameLayout(InstrumentationRegistry.getTargetContext());
+        TagChipsAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, 0);
+        TagChipView.TagChipListener listener = holder.getView().getOnTagDeletedListener();
+        //
+        // Warm up the color, background and sort key caches.
+        for (int i = 0; i < BIND_COUNT; i++) {
+            adapter.onBindViewHolder(holder, i);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < BIND_COUNT; i++) {
+            adapter.onBindViewHolder(holder, i);
+        }
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        assertSame(listener, holder.getView().getOnTagDeletedListener());
+        assertTrue("Binding " + BIND_COUNT + " chips allocated " + allocations + " objects",
+                allocations <= MAX_ALLOCATIONS);
+    }
+
+    /**
+     * All chips share one color, so only the listener and label could allocate.
+     */
+    private static class ChipTag extends ITag {
+        private final int mId;
+        private final String mLabel;
+
+        ChipTag(int id, String label) {
+            mId = id;
+            mLabel = label;
+        }
+
+        @Override
+        public int getId() {
+            return mId;
+        }
+
+        @Override
+        public String getLabel() {
+            return mLabel;
+        }
+
+        @Override
+        public String getColor() {
+            return "ff668899";
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            // not needed
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.amandariu.tagger
 
 import android.os.Parcelable
+import java.text.CollationKey
+import java.text.Collator
+import java.util.Locale
 
 /**
  * Interface for working with individual Tag elements.
@@ -12,11 +15,69 @@ abstract class ITag : Parcelable, Comparable<ITag> {
     abstract val label: String
     abstract val color: String
 
+    //
+    // Derived from the label and color the first time they are needed, and never parceled.
+    private var mSortKey: CollationKey? = null
+    private var mColorInt = 0
+    @Volatile private var mColorParsed = false
+
+    companion object {
+        /**
+         * The locale tags are sorted for. It is the default locale when this class is loaded,
+         * so it stays the same for the life of the process. Sort keys stored outside the
+         * process, for example in a database, must be regenerated if it changes.
+         */
+        @JvmStatic
+        val collationLocale: Locale = Locale.getDefault()
+
+        /**
+         * Orders labels for the [collationLocale], ignoring case. Collators are not thread
+         * safe, so access is synchronized. Each tag only needs its key generated once.
+         */
+        private val sCollator = Collator.getInstance(collationLocale).apply {
+            strength = Collator.SECONDARY
+        }
+
+        /**
+         * Generates the locale-aware sort key for a label. The bytes of two keys, compared as
+         * unsigned bytes, are in the same order as the keys.
+         */
+        @JvmStatic
+        fun collationKey(label: String): CollationKey {
+            synchronized(sCollator) {
+                return sCollator.getCollationKey(label)
+            }
+        }
+    }
+
+    /**
+     * @return The locale-aware key used to sort tags alphabetically. The key is generated the
+     * first time it is requested and then cached, so the label must not change afterwards.
+     */
+    val sortKey: CollationKey
+        get() {
+            var key = mSortKey
+            if (key == null) {
+                key = collationKey(label)
+                mSortKey = key
+            }
+            return key
+        }
+
     /**
-     * @return The integer parsed from the color string.
+     * @return The integer parsed from the color string. The value is parsed the first time it
+     * is requested and then cached, so the color must not change afterwards. Tags that already
+     * know their color int, for example from a database column, can override this to skip
+     * parsing.
      */
-    val colorInt: Int
-        get() = getColorInt(color)
+    open val colorInt: Int
+        get() {
+            if (!mColorParsed) {
+                mColorInt = getColorInt(color)
+                mColorParsed = true
+            }
+            return mColorInt
+        }
 
     /**
      * {@inheritDoc}
@@ -31,7 +92,7 @@ abstract class ITag : Parcelable, Comparable<ITag> {
      * if it's greater than [other].
      */
     override fun compareTo(other: ITag): Int {
-        return label.toLowerCase().compareTo(other.label.toLowerCase())
+        return sortKey.compareTo(other.sortKey)
     }
 
     /**
@@ -0,0 +1,55 @@
+package com.amandariu.tagger
+
+/**
+ * Supplies the available tags a page at a time, so [TaggerActivity] only holds the rows near
+ * the visible part of the list instead of the whole catalog.
+ *
+ * All methods are called on a background thread. Tags must always be returned in the same
+ * alphabetical order so pages line up with each other.
+ *
+ * To use a page source, the [android.app.Application] must implement [Provider] and the
+ * activity must be started with [TaggerActivity.createPagedIntent].
+ *
+ * @author Amanda Riu
+ */
+interface ITagPageSource {
+
+    /**
+     * Count the tags matching a query.
+     * @param query Search text, lowercased and with accents removed. To find the same tags
+     * as the in-memory filter, match the labels that contain it once normalized the same way.
+     * An empty query matches every tag.
+     * @return The number of matching tags.
+     */
+    fun countTags(query: String): Int
+
+    /**
+     * Load a single page of the tags matching a query.
+     * @param query Search text, lowercased and with accents removed. To find the same tags
+     * as the in-memory filter, match the labels that contain it once normalized the same way.
+     * An empty query matches every tag.
+     * @param offset The position of the first tag to load.
+     * @param limit The maximum number of tags to load.
+     * @return The matching tags in alphabetical order.
+     */
+    fun loadTags(query: String, offset: Int, limit: Int): List<ITag>
+
+    /**
+     * Load the tags with the provided ids. Used to restore the selected tags, which are saved
+     * by id only. Returns no tags unless overridden, in which case selected tags that are not
+     * in memory are lost when the process is killed.
+     * @param ids The ids of the tags to load.
+     * @return The tags found, in any order. Ids without a tag are skipped.
+     */
+    fun loadTagsById(ids: IntArray): List<ITag> = emptyList()
+
+    /**
+     * Implemented by the [android.app.Application] to hand its page source to the tagger.
+     */
+    interface Provider {
+        /**
+         * @return The source of available tags, or null if one is not available.
+         */
+        fun getTagPageSource(): ITagPageSource?
+    }
+}
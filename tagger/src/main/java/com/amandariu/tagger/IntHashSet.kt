@@ -0,0 +1,132 @@
+package com.amandariu.tagger
+
+/**
+ * A set of primitive ints backed by an open-addressing hash table. Unlike a `HashSet<Int>`
+ * it never boxes, so lookups in hot paths such as [android.support.v7.widget.RecyclerView]
+ * binding do not allocate.
+ *
+ * This class is not thread safe.
+ *
+ * @author Amanda Riu
+ */
+internal class IntHashSet(expectedSize: Int = 16) {
+
+    private var mKeys: IntArray
+    private var mUsed: BooleanArray
+    private var mMask: Int
+
+    /**
+     * @return The number of ints in this set.
+     */
+    var size = 0
+        private set
+
+    init {
+        //
+        // Keep the table at most 3/4 full.
+        var capacity = 16
+        while (capacity * 3 < expectedSize * 4) {
+            capacity = capacity shl 1
+        }
+        mKeys = IntArray(capacity)
+        mUsed = BooleanArray(capacity)
+        mMask = capacity - 1
+    }
+
+    /**
+     * @return True if the set contains the provided key.
+     */
+    fun contains(key: Int): Boolean {
+        var i = slot(key)
+        while (mUsed[i]) {
+            if (mKeys[i] == key) {
+                return true
+            }
+            i = (i + 1) and mMask
+        }
+        return false
+    }
+
+    /**
+     * Add a key to the set.
+     * @return True if the key was added, false if it was already in the set.
+     */
+    fun add(key: Int): Boolean {
+        if ((size + 1) * 4 > mKeys.size * 3) {
+            rehash(mKeys.size shl 1)
+        }
+        var i = slot(key)
+        while (mUsed[i]) {
+            if (mKeys[i] == key) {
+                return false
+            }
+            i = (i + 1) and mMask
+        }
+        mUsed[i] = true
+        mKeys[i] = key
+        size++
+        return true
+    }
+
+    /**
+     * Remove a key from the set.
+     * @return True if the key was removed, false if it was not in the set.
+     */
+    fun remove(key: Int): Boolean {
+        var gap = slot(key)
+        while (true) {
+            if (!mUsed[gap]) {
+                return false
+            }
+            if (mKeys[gap] == key) {
+                break
+            }
+            gap = (gap + 1) and mMask
+        }
+        //
+        // Shift the following entries of the probe run back into the gap so lookups never
+        // stop early at an empty slot.
+        var i = (gap + 1) and mMask
+        while (mUsed[i]) {
+            val home = slot(mKeys[i])
+            val movable = if (i > gap) home <= gap || home > i else home <= gap && home > i
+            if (movable) {
+                mKeys[gap] = mKeys[i]
+                gap = i
+            }
+            i = (i + 1) and mMask
+        }
+        mUsed[gap] = false
+        size--
+        return true
+    }
+
+    /**
+     * Remove all keys from the set.
+     */
+    fun clear() {
+        if (size > 0) {
+            mUsed.fill(false)
+            size = 0
+        }
+    }
+
+    private fun slot(key: Int): Int {
+        val h = key * -0x61c88647
+        return (h xor (h ushr 16)) and mMask
+    }
+
+    private fun rehash(capacity: Int) {
+        val oldKeys = mKeys
+        val oldUsed = mUsed
+        mKeys = IntArray(capacity)
+        mUsed = BooleanArray(capacity)
+        mMask = capacity - 1
+        size = 0
+        for (i in oldKeys.indices) {
+            if (oldUsed[i]) {
+                add(oldKeys[i])
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.amandariu.tagger
+
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+
+import java.util.ArrayList
+import java.util.HashSet
+import java.util.LinkedHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * The tags matching a single query, loaded lazily from an [ITagPageSource].
+ *
+ * Only the [MAX_PAGES] most recently used pages are kept in memory, so the cost of displaying
+ * the list does not depend on the size of the catalog. Pages are loaded one at a time on a
+ * background thread, and a page that has scrolled far out of view before its turn comes is
+ * skipped.
+ *
+ * Apart from the background loads, this class must only be used on the main thread.
+ *
+ * @author Amanda Riu
+ */
+internal class PagedTagList(private val mSource: ITagPageSource,
+                            val query: String,
+                            private val mListener: Listener) {
+
+    companion object {
+        private val TAG = PagedTagList::class.java.simpleName
+
+        const val PAGE_SIZE = 50
+        private const val MAX_PAGES = 6
+        //
+        // Start loading the neighbouring page once a row this close to the edge of a page
+        // is bound.
+        private const val PREFETCH_DISTANCE = PAGE_SIZE / 4
+        //
+        // Loading every matching tag only needs a few large queries, not one per page.
+        private const val BULK_PAGE_SIZE = PAGE_SIZE * 20
+
+        private val sExecutor: ExecutorService = Executors.newSingleThreadExecutor()
+        private val sMainHandler = Handler(Looper.getMainLooper())
+
+        /**
+         * Load tags by id on the same background thread as the pages.
+         * @param onLoaded Called on the main thread with the tags found. Not called if the
+         * load fails.
+         */
+        fun loadTagsById(source: ITagPageSource, ids: IntArray, onLoaded: (List<ITag>) -> Unit) {
+            sExecutor.execute {
+                val tags = try {
+                    source.loadTagsById(ids)
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error loading [${ids.size}] tags by id", e)
+                    return@execute
+                }
+                sMainHandler.post { onLoaded(tags) }
+            }
+        }
+
+        /**
+         * Load the first tags matching a query on the same background thread as the pages.
+         * @param limit The most tags to load, which bounds the memory used however large the
+         * catalog is.
+         * @param onLoaded Called on the main thread with the tags found. Not called if the
+         * load fails.
+         */
+        fun loadMatchingTags(source: ITagPageSource, query: String, limit: Int,
+                        onLoaded: (List<ITag>) -> Unit) {
+            sExecutor.execute {
+                val tags = ArrayList<ITag>()
+                try {
+                    val matching = source.countTags(query)
+                    if (matching > limit) {
+                        Log.w(TAG, "Only loading [$limit] of the [$matching] tags for [$query]")
+                    }
+                    val count = Math.min(matching, limit)
+                    tags.ensureCapacity(count)
+                    while (tags.size < count) {
+                        val page = source.loadTags(query, tags.size,
+                                Math.min(BULK_PAGE_SIZE, count - tags.size))
+                        if (page.isEmpty()) {
+                            break
+                        }
+                        tags.addAll(page)
+                    }
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error loading all tags for [$query]", e)
+                    return@execute
+                }
+                sMainHandler.post { onLoaded(tags) }
+            }
+        }
+    }
+
+    /**
+     * Notified on the main thread as the list loads.
+     */
+    interface Listener {
+        /**
+         * The size of the list and its first page have been loaded.
+         */
+        fun onCountLoaded(list: PagedTagList)
+
+        /**
+         * The tags in the range have been loaded.
+         */
+        fun onPageLoaded(list: PagedTagList, start: Int, count: Int)
+    }
+
+    /**
+     * @return The number of matching tags, or 0 until the count has been loaded.
+     */
+    var size = 0
+        private set
+
+    private val mPages = object : LinkedHashMap<Int, List<ITag>>(MAX_PAGES + 1, 1f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, List<ITag>>?): Boolean {
+            return this.size > MAX_PAGES
+        }
+    }
+    private val mLoadingPages = HashSet<Int>()
+    @Volatile private var mLastRequestedPage = 0
+    @Volatile private var mClosed = false
+
+    /**
+     * Start loading the count and the first page.
+     */
+    fun load() {
+        sExecutor.execute {
+            if (mClosed) {
+                return@execute
+            }
+            val count: Int
+            val firstPage: List<ITag>
+            try {
+                count = mSource.countTags(query)
+                firstPage = if (count > 0) mSource.loadTags(query, 0, PAGE_SIZE) else emptyList()
+            } catch (e: Exception) {
+                Log.e(TAG, "Error loading tags for [$query]", e)
+                return@execute
+            }
+            sMainHandler.post {
+                if (!mClosed) {
+                    size = count
+                    mPages[0] = firstPage
+                    mListener.onCountLoaded(this)
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the tag at a position, loading its page if needed.
+     * @param position The position of the tag.
+     * @return The tag, or null if its page is still loading.
+     */
+    operator fun get(position: Int): ITag? {
+        val page = position / PAGE_SIZE
+        val offset = position % PAGE_SIZE
+        mLastRequestedPage = page
+        if (offset >= PAGE_SIZE - PREFETCH_DISTANCE && (page + 1) * PAGE_SIZE < size) {
+            loadPage(page + 1)
+        } else if (offset < PREFETCH_DISTANCE && page > 0) {
+            loadPage(page - 1)
+        }
+        val tags = mPages[page]
+        if (tags == null) {
+            loadPage(page)
+            return null
+        }
+        return if (offset < tags.size) tags[offset] else null
+    }
+
+    /**
+     * Find a tag among the pages currently in memory.
+     * @param tag The tag to find.
+     * @return The position of the tag, or -1 if it isn't loaded.
+     */
+    fun indexOfLoaded(tag: ITag): Int {
+        for ((page, tags) in mPages) {
+            for (i in tags.indices) {
+                if (tags[i].id == tag.id) {
+                    return page * PAGE_SIZE + i
+                }
+            }
+        }
+        return -1
+    }
+
+    /**
+     * Stop loading pages. Any loads still in flight are discarded.
+     */
+    fun close() {
+        mClosed = true
+    }
+
+    private fun loadPage(page: Int) {
+        if (mPages.containsKey(page) || !mLoadingPages.add(page)) {
+            return
+        }
+        sExecutor.execute {
+            val start = page * PAGE_SIZE
+            //
+            // The user may have scrolled well past this page while it was queued.
+            val tags = if (!mClosed && Math.abs(page - mLastRequestedPage) < MAX_PAGES) {
+                try {
+                    mSource.loadTags(query, start, PAGE_SIZE)
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error loading tags [$start] to [${start + PAGE_SIZE}]", e)
+                    null
+                }
+            } else {
+                null
+            }
+            sMainHandler.post {
+                mLoadingPages.remove(page)
+                if (!mClosed && tags != null) {
+                    mPages[page] = tags
+                    mListener.onPageLoaded(this, start, Math.min(tags.size, size - start))
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.amandariu.tagger
+
+import java.util.AbstractList
+import java.util.ArrayList
+import java.util.Collections
+
+/**
+ * A list of [ITag]s kept in alphabetical order. Inserting or finding a tag is a binary search
+ * over the cached [ITag.sortKey]s with no allocation per comparison.
+ *
+ * @author Amanda Riu
+ */
+internal class SortedTagList private constructor(capacity: Int)
+    : AbstractList<ITag>() {
+
+    private val mTags = ArrayList<ITag>(capacity)
+
+    companion object {
+        /**
+         * Create a list from tags in any order.
+         */
+        @JvmStatic
+        fun of(tags: Collection<ITag>): SortedTagList {
+            val sorted = ArrayList(tags)
+            Collections.sort(sorted)
+            return fromSorted(sorted)
+        }
+
+        /**
+         * Create a list from tags that are already in alphabetical order.
+         */
+        @JvmStatic
+        fun fromSorted(tags: List<ITag>): SortedTagList {
+            val list = SortedTagList(tags.size)
+            list.mTags.addAll(tags)
+            return list
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    override val size: Int
+        get() = mTags.size
+
+    /**
+     * {@inheritDoc}
+     */
+    override fun get(index: Int): ITag = mTags[index]
+
+    /**
+     * Insert a tag after any tags with the same sort key.
+     * @param tag The tag to insert.
+     * @return The position the tag was inserted at.
+     */
+    fun insert(tag: ITag): Int {
+        val key = tag.sortKey
+        var low = 0
+        var high = mTags.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (mTags[mid].sortKey <= key) {
+                low = mid + 1
+            } else {
+                high = mid
+            }
+        }
+        mTags.add(low, tag)
+        modCount++
+        return low
+    }
+
+    /**
+     * Remove a tag from the list.
+     * @param tag The tag to remove.
+     * @return The position the tag was removed from, or -1 if it wasn't in the list.
+     */
+    fun removeTag(tag: ITag): Int {
+        val pos = indexOfTag(tag)
+        if (pos >= 0) {
+            mTags.removeAt(pos)
+            modCount++
+        }
+        return pos
+    }
+
+    /**
+     * Find a tag using a binary search over the sort keys.
+     * @param tag The tag to find.
+     * @return The position of the tag, or -1 if it isn't in the list.
+     */
+    fun indexOfTag(tag: ITag): Int {
+        val key = tag.sortKey
+        var low = 0
+        var high = mTags.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (mTags[mid].sortKey < key) {
+                low = mid + 1
+            } else {
+                high = mid
+            }
+        }
+        //
+        // Several tags may share a label, so check each of them by id.
+        var i = low
+        while (i < mTags.size && mTags[i].sortKey.compareTo(key) == 0) {
+            if (mTags[i].id == tag.id) {
+                return i
+            }
+            i++
+        }
+        return -1
+    }
+}
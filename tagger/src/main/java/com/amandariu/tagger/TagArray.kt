@@ -0,0 +1,149 @@
+package com.amandariu.tagger
+
+import android.os.Parcel
+import android.os.Parcelable
+
+import java.util.ArrayList
+import java.util.HashMap
+
+/**
+ * Parcels a list of tags in a compact, columnar form for saved instance state and intents.
+ *
+ * A `Parcelable[]` of tags writes the class name of every element, followed by its id and its
+ * label and color as UTF-16 strings. This class writes one header for the whole list and then:
+ *
+ * * The ids as one int array.
+ * * Each distinct color once, and the index of each tag's color in that palette. The indices
+ * are single bytes while the palette has at most 256 colors.
+ * * The labels encoded as UTF-8 and packed into one byte array, with the length of each.
+ *
+ * Unparceled tags are [TagArray.Entry] instances, not the class of the original tags.
+ *
+ * @author Amanda Riu
+ */
+class TagArray(val tags: List<ITag>) : Parcelable {
+
+    companion object {
+        /**
+         * The largest palette whose indices fit in a byte.
+         */
+        private const val MAX_BYTE_PALETTE = 256
+
+        @JvmField
+        val CREATOR = object : Parcelable.Creator<TagArray> {
+            override fun createFromParcel(source: Parcel): TagArray = read(source)
+            override fun newArray(size: Int): Array<TagArray?> = arrayOfNulls(size)
+        }
+
+        private fun read(source: Parcel): TagArray {
+            val count = source.readInt()
+            val ids = source.createIntArray()
+            val palette = source.createStringArray()
+            val colorIndices = IntArray(count)
+            if (palette.size <= MAX_BYTE_PALETTE) {
+                val indices = source.createByteArray()
+                for (i in 0 until count) {
+                    colorIndices[i] = indices[i].toInt() and 0xff
+                }
+            } else {
+                source.readIntArray(colorIndices)
+            }
+            val labelLengths = source.createIntArray()
+            val labels = source.createByteArray()
+
+            val tags = ArrayList<ITag>(count)
+            var offset = 0
+            for (i in 0 until count) {
+                val label = String(labels, offset, labelLengths[i], Charsets.UTF_8)
+                offset += labelLengths[i]
+                tags.add(Entry(ids[i], label, palette[colorIndices[i]]))
+            }
+            return TagArray(tags)
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    override fun writeToParcel(dest: Parcel, flags: Int) {
+        val count = tags.size
+        val ids = IntArray(count)
+        val palette = ArrayList<String>()
+        val paletteIndices = HashMap<String, Int>()
+        val colorIndices = IntArray(count)
+        val labelLengths = IntArray(count)
+        val encodedLabels = arrayOfNulls<ByteArray>(count)
+        var labelsSize = 0
+        for (i in 0 until count) {
+            val tag = tags[i]
+            ids[i] = tag.id
+            var index = paletteIndices[tag.color]
+            if (index == null) {
+                index = palette.size
+                paletteIndices[tag.color] = index
+                palette.add(tag.color)
+            }
+            colorIndices[i] = index
+            val label = tag.label.toByteArray(Charsets.UTF_8)
+            encodedLabels[i] = label
+            labelLengths[i] = label.size
+            labelsSize += label.size
+        }
+        //
+        // Pack the labels into one array.
+        val labels = ByteArray(labelsSize)
+        var offset = 0
+        for (label in encodedLabels) {
+            System.arraycopy(label!!, 0, labels, offset, label.size)
+            offset += label.size
+        }
+
+        dest.writeInt(count)
+        dest.writeIntArray(ids)
+        dest.writeStringArray(palette.toTypedArray())
+        if (palette.size <= MAX_BYTE_PALETTE) {
+            dest.writeByteArray(ByteArray(count) { colorIndices[it].toByte() })
+        } else {
+            dest.writeIntArray(colorIndices)
+        }
+        dest.writeIntArray(labelLengths)
+        dest.writeByteArray(labels)
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    override fun describeContents(): Int = 0
+
+    /**
+     * A tag read back from a [TagArray].
+     */
+    class Entry(override val id: Int,
+                override val label: String,
+                override val color: String) : ITag() {
+
+        companion object {
+            @JvmField
+            val CREATOR = object : Parcelable.Creator<Entry> {
+                override fun createFromParcel(source: Parcel): Entry =
+                        Entry(source.readInt(), source.readString(), source.readString())
+
+                override fun newArray(size: Int): Array<Entry?> = arrayOfNulls(size)
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        override fun writeToParcel(dest: Parcel, flags: Int) {
+            dest.writeInt(id)
+            dest.writeString(label)
+            dest.writeString(color)
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        override fun describeContents(): Int = 0
+    }
+}
@@ -1,7 +1,7 @@
 package com.amandariu.tagger
 
 import android.content.Context
-import android.graphics.drawable.GradientDrawable
+import android.support.annotation.VisibleForTesting
 import android.util.AttributeSet
 import android.view.Gravity
 import android.view.LayoutInflater
@@ -26,18 +26,23 @@ class TagChipView @JvmOverloads constructor(context: Context,
             mTxtLabel.text = chipTag?.label
 
             chipTag?.let {
-                val gd = GradientDrawable()
-                gd.setColor(chipTag!!.colorInt)
-                gd.cornerRadius = getDensityPixel(context, 16).toFloat()
-                background = gd
-                invalidate()
-                requestLayout()
+                //
+                // Recycled chips usually keep their color, so only swap the background
+                // when it changes.
+                val color = it.colorInt
+                if (!mHasBackgroundColor || color != mBackgroundColor) {
+                    background = getChipBackground(context, color)
+                    mBackgroundColor = color
+                    mHasBackgroundColor = true
+                }
             }
         }
 
     private val mTxtLabel: TextView
     private val mBtnDelete: ImageView
     private var mListener: TagChipListener? = null
+    private var mBackgroundColor = 0
+    private var mHasBackgroundColor = false
 
     interface TagChipListener {
         /**
@@ -81,4 +86,9 @@ class TagChipView @JvmOverloads constructor(context: Context,
     fun setOnTagDeletedListener(listener: TagChipListener) {
         mListener = listener
     }
+
+    @VisibleForTesting
+    fun getOnTagDeletedListener(): TagChipListener? {
+        return mListener
+    }
 }
@@ -1,5 +1,6 @@
 package com.amandariu.tagger
 
+import android.support.v7.util.DiffUtil
 import android.support.v7.widget.RecyclerView
 import android.view.LayoutInflater
 import android.view.View
@@ -8,7 +9,6 @@ import android.widget.Filter
 import android.widget.Filterable
 
 import java.util.ArrayList
-import java.util.Collections
 
 /**
  * [RecyclerView.Adapter] that can display a list of [ITag]s as [TagChipView]s.
@@ -26,17 +26,34 @@ import java.util.Collections
 class TagChipsAdapter
 /**
  * Constructor.
- * @param mSelectedTags A list of selected tags. Can be an empty list.
+ * @param mSelection The selected tags. The adapter updates as the selection changes, until
+ * [release] is called.
  * @param mTagChipListener The listener to notify when the user closes a tag to deselect it.
  */
-internal constructor(private val mSelectedTags: MutableList<ITag>,
+internal constructor(private val mSelection: TagSelection,
                      private val mTagChipListener: TagChipView.TagChipListener?)
-    : RecyclerView.Adapter<TagChipsAdapter.ViewHolder>(), Filterable {
+    : RecyclerView.Adapter<TagChipsAdapter.ViewHolder>(), Filterable, TagSelection.Listener {
+
+    companion object {
+        //
+        // Past this many changed tags, rebuilding the chips is cheaper than inserting or
+        // removing each one.
+        private const val MAX_ITEM_UPDATES = 50
+    }
+
+    private var mSelectedTags = SortedTagList.of(mSelection.tags)
     //
     // Filtering
-    private var mFilteredSelectedTags: MutableList<ITag>? = null
+    private var mFilteredSelectedTags: SortedTagList? = null
     private var mTagFilter: TagFilter? = null
     private var mFilterEnabled = false
+    private var mQuery: CharSequence? = null
+    private var mSearchIndex: TagSearchIndex
+    //
+    // Incremented each time the displayed list is changed in place, so a diff calculated
+    // against an older snapshot is never dispatched.
+    private var mListVersion = 0
+    @Volatile private var mDiffBase: DiffBase? = null
 
     /**
      * @return The active list of selected tags.
@@ -44,63 +61,125 @@ internal constructor(private val mSelectedTags: MutableList<ITag>,
     val selectedTags: List<ITag>
         get() = mSelectedTags
 
-    init {
+    /**
+     * Constructor for an adapter with a selection of its own.
+     * @param selectedTags A list of selected tags. Can be an empty list.
+     * @param tagChipListener The listener to notify when the user closes a tag to deselect it.
+     */
+    internal constructor(selectedTags: List<ITag>,
+                         tagChipListener: TagChipView.TagChipListener?)
+            : this(TagSelection(selectedTags), tagChipListener)
 
-        Collections.sort(mSelectedTags)
+    init {
         mFilteredSelectedTags = mSelectedTags
+        mSearchIndex = TagSearchIndex(mSelectedTags)
+        mSelection.addListener(this)
     }
 
     /**
-     * Add a new tag to the list of selected tags. This will create a new [TagChipView]
-     * for this tag.
+     * Add a new tag to the selection. A new [TagChipView] is created for it once the
+     * selection notifies this adapter.
      * @param tag The tag to add to the selected tags.
      */
     fun add(tag: ITag) {
-        val pos = getAlphabeticalPos(mSelectedTags, tag)
-        mSelectedTags.add(pos, tag)
+        mSelection.add(tag)
+    }
 
-        if (mFilterEnabled) {
-            val filterPos = getAlphabeticalPos(mFilteredSelectedTags!!, tag)
-            mFilteredSelectedTags!!.add(filterPos, tag)
-            notifyItemRangeInserted(filterPos, 1)
-        } else {
-            notifyItemRangeInserted(pos, 1)
-        }
+    /**
+     * Remove a tag from the selection. Its [TagChipView] is removed once the selection
+     * notifies this adapter.
+     * @param tag The tag to remove from the selected tags.
+     */
+    fun remove(tag: ITag) {
+        mSelection.remove(tag)
     }
 
     /**
-     * Get the position to insert the tag so the list of selected tags will continue
-     * to be in alphabetical order.
-     * @param tagList The list to evaluate.
-     * @param tag The tag to find a position for.
-     * @return The position the tag should be inserted.
+     * Add several tags to the selection. The chips are updated once for all of them.
+     * @param tags The tags to add to the selected tags.
      */
-    private fun getAlphabeticalPos(tagList: List<ITag>, tag: ITag): Int {
-        for (i in tagList.indices) {
-            if (tagList[i].compareTo(tag) > 0) {
-                return i
-            }
+    fun addAll(tags: Collection<ITag>) {
+        mSelection.addAll(tags)
+    }
+
+    /**
+     * Remove several tags from the selection. The chips are updated once for all of them.
+     * @param tags The tags to remove from the selected tags.
+     */
+    fun removeAll(tags: Collection<ITag>) {
+        mSelection.removeAll(tags)
+    }
+
+    /**
+     * Remove every tag from the selection.
+     */
+    fun clear() {
+        mSelection.clear()
+    }
+
+    /**
+     * Stop following the selection. Must be called once the adapter is no longer displayed.
+     */
+    internal fun release() {
+        mSelection.removeListener(this)
+    }
+
+    /**
+     * Add and remove the chips of the tags whose selection changed.
+     */
+    override fun onSelectionChanged(added: List<ITag>, removed: List<ITag>) {
+        if (added.size + removed.size > MAX_ITEM_UPDATES) {
+            rebuild()
+            return
+        }
+        for (tag in removed) {
+            removeChip(tag)
+        }
+        for (tag in added) {
+            insertChip(tag)
         }
-        return tagList.size
     }
 
     /**
-     * Remove a tag from the list of selected tags. This will remove the [TagChipView]
-     * from the associated layout.
-     * @param tag The tag to remove from the selected tags.
+     * Rebuild the chips from the selection, after a change too large to apply chip by chip.
      */
-    fun remove(tag: ITag) {
-        val pos = mSelectedTags.indexOf(tag)
+    private fun rebuild() {
+        mSelectedTags = SortedTagList.of(mSelection.tags)
+        mSearchIndex = TagSearchIndex(mSelectedTags)
+        mListVersion++
+        if (mFilterEnabled) {
+            filterTags(mQuery)
+        } else {
+            mFilteredSelectedTags = mSelectedTags
+            notifyDataSetChanged()
+        }
+    }
+
+    private fun insertChip(tag: ITag) {
+        val pos = mSelectedTags.insert(tag)
+        mSearchIndex.add(tag)
+        mListVersion++
+
+        if (mFilterEnabled) {
+            val filterPos = mFilteredSelectedTags!!.insert(tag)
+            notifyItemRangeInserted(filterPos, 1)
+        } else {
+            notifyItemRangeInserted(pos, 1)
+        }
+    }
+
+    private fun removeChip(tag: ITag) {
+        val pos = mSelectedTags.removeTag(tag)
         if (pos >= 0) {
-            mSelectedTags.removeAt(pos)
+            mSearchIndex.remove(tag)
+            mListVersion++
         }
         if (mFilterEnabled) {
-            val filteredPos = mFilteredSelectedTags!!.indexOf(tag)
+            val filteredPos = mFilteredSelectedTags!!.removeTag(tag)
             if (filteredPos >= 0) {
-                mFilteredSelectedTags!!.removeAt(filteredPos)
                 notifyItemRemoved(filteredPos)
             }
-        } else {
+        } else if (pos >= 0) {
             notifyItemRemoved(pos)
         }
     }
@@ -120,22 +199,24 @@ internal constructor(private val mSelectedTags: MutableList<ITag>,
     override fun onBindViewHolder(holder: ViewHolder, position: Int) {
         val tag = mFilteredSelectedTags!![position]
         holder.view.chipTag = tag
-        holder.view.setOnTagDeletedListener(TagChipListenerImpl())
     }
 
     /**
      * Inner class to get around 'type mismatch' issue with kotlin and
-     * interfaces.
+     * interfaces. One instance is created per [ViewHolder], and the tag is resolved
+     * from the holder's adapter position when the chip is clicked.
      */
-    inner class TagChipListenerImpl : TagChipView.TagChipListener {
+    inner class TagChipListenerImpl(private val mHolder: ViewHolder) : TagChipView.TagChipListener {
         /**
          * User has clicked the chip to remove it from the selected
          * tags list.
          */
         override fun onTagClosed(chip: TagChipView) {
-            chip.chipTag?.let {
-                remove(it)
+            val pos = mHolder.adapterPosition
+            if (pos == RecyclerView.NO_POSITION) {
+                return
             }
+            remove(mFilteredSelectedTags!![pos])
             mTagChipListener?.onTagClosed(chip)
         }
     }
@@ -148,6 +229,17 @@ internal constructor(private val mSelectedTags: MutableList<ITag>,
     }
 
     //region Filtering
+    /**
+     * Filter the selected tags by label. Prefer this over calling [getFilter] directly since
+     * it lets the filter dispatch only the chips that changed instead of refreshing them all.
+     * @param query The text to filter by. Null or empty shows all selected tags.
+     */
+    fun filterTags(query: CharSequence?) {
+        mQuery = query
+        mDiffBase = DiffBase(ArrayList(mFilteredSelectedTags!!), mListVersion)
+        filter.filter(query)
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -167,34 +259,48 @@ internal constructor(private val mSelectedTags: MutableList<ITag>,
          */
         override fun performFiltering(constraint: CharSequence?): Filter.FilterResults {
             val filterResults = Filter.FilterResults()
-            if (constraint != null && constraint.length > 0) {
-                val tempList = ArrayList<ITag>()
-
-                for (tag in mSelectedTags) {
-                    if (tag.label.toLowerCase().contains(constraint.toString().toLowerCase())) {
-                        tempList.add(tag)
-                    }
-                }
-                mFilterEnabled = true
-                filterResults.count = tempList.size
-                filterResults.values = tempList
-            } else {
-                mFilterEnabled = false
-                filterResults.count = mSelectedTags.size
-                filterResults.values = mSelectedTags
-            }
+            val enabled = constraint != null && constraint.length > 0
+            //
+            // The index is safe to read from this thread, unlike the live list of selected tags.
+            val matches = mSearchIndex.search(if (enabled) constraint!! else "")!!
+            val tempList = SortedTagList.fromSorted(matches)
+            val base = mDiffBase
+            val diff = if (base != null) TagDiffCallback.calculateDiff(base.tags, tempList) else null
+            filterResults.count = tempList.size
+            filterResults.values = FilterUpdate(tempList, enabled, base, diff)
             return filterResults
         }
 
         /**
          * {@inheritDoc}
          */
-        @Suppress("UNCHECKED_CAST")
-        override fun publishResults(constraint: CharSequence, results: Filter.FilterResults) {
-            mFilteredSelectedTags = results.values as MutableList<ITag>
-            notifyDataSetChanged()
+        override fun publishResults(constraint: CharSequence?, results: Filter.FilterResults) {
+            val update = results.values as? FilterUpdate ?: return
+            mFilterEnabled = update.filterEnabled
+            mFilteredSelectedTags = if (update.filterEnabled) update.tags else mSelectedTags
+
+            val diff = update.diff
+            if (diff != null && update.base!!.version == mListVersion) {
+                diff.dispatchUpdatesTo(this@TagChipsAdapter)
+            } else {
+                notifyDataSetChanged()
+            }
+            mListVersion++
         }
     }
+
+    /**
+     * Snapshot of the displayed list taken when a filter is requested.
+     */
+    private class DiffBase(val tags: List<ITag>, val version: Int)
+
+    /**
+     * The result of a filter pass along with the updates needed to display it.
+     */
+    private class FilterUpdate(val tags: SortedTagList,
+                               val filterEnabled: Boolean,
+                               val base: DiffBase?,
+                               val diff: DiffUtil.DiffResult?)
     //endregion
 
     inner class ViewHolder(v: View) : RecyclerView.ViewHolder(v) {
@@ -202,6 +308,7 @@ internal constructor(private val mSelectedTags: MutableList<ITag>,
 
         init {
             view = v.findViewById(R.id.tagView)
+            view.setOnTagDeletedListener(TagChipListenerImpl(this))
         }
     }
 }
@@ -29,6 +29,11 @@ class TagChipsFragment : Fragment(), TagChipView.TagChipListener, SearchView.OnQ
 
     private var mListener: TagChipsFragmentListener? = null
     private var mAdapter: TagChipsAdapter? = null
+    //
+    // Shared with the activity if it is a TagSelection.Owner, else owned by this fragment.
+    // Kept while the fragment is retained.
+    private var mSelection: TagSelection? = null
+    private var mOwnsSelection = false
 
     companion object {
         val TAG = TagChipsFragment::class.java.simpleName
@@ -41,14 +46,26 @@ class TagChipsFragment : Fragment(), TagChipView.TagChipListener, SearchView.OnQ
          * @return A properly initialized [TagChipsFragment].
          */
         fun newInstance(selectedTags: List<ITag>): TagChipsFragment {
+            val fragment = newInstance(TagSetStore.put(ArrayList(selectedTags)))
+            fragment.arguments!!.putBoolean(ARG_OWNS_TAG_SETS, true)
+            return fragment
+        }
+
+        /**
+         * Create a new instance of this fragment for tags held in the [TagSetStore].
+         *
+         * @param selectedTagsHandle The handle of the tags already selected.
+         * @return A properly initialized [TagChipsFragment].
+         */
+        internal fun newInstance(selectedTagsHandle: Long): TagChipsFragment {
             val fragment = TagChipsFragment()
             val args = Bundle()
-            args.putParcelableArray(
-                    TaggerActivity.ARG_SELECTED_TAGS,
-                    selectedTags.toTypedArray())
+            args.putLong(TaggerActivity.ARG_SELECTED_TAGS_HANDLE, selectedTagsHandle)
             fragment.arguments = args
             return fragment
         }
+
+        private val ARG_OWNS_TAG_SETS = "com.amandariu.tagger.CHIPS-OWNS-TAG-SETS"
     }
 
     /**
@@ -60,6 +77,11 @@ class TagChipsFragment : Fragment(), TagChipView.TagChipListener, SearchView.OnQ
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         retainInstance = true
+        //
+        // The set stored by newInstance(List) is released in onDestroy.
+        if (arguments?.getBoolean(ARG_OWNS_TAG_SETS) == true) {
+            TagSetStore.claim(arguments!!.getLong(TaggerActivity.ARG_SELECTED_TAGS_HANDLE))
+        }
     }
 
     /**
@@ -71,41 +93,33 @@ class TagChipsFragment : Fragment(), TagChipView.TagChipListener, SearchView.OnQ
         val v = inflater.inflate(R.layout.fragment_tag_chips, container, false)
         val layout = v.findViewById<TagChipsLayout>(R.id.tagChipsLayout)
 
-        val selectedTags = ArrayList<ITag>()
-        if (savedInstanceState == null) {
-            if (arguments == null) {
-                throw IllegalArgumentException("Selected Tags must be included in" +
-                        " the arguments for this fragment. Please use the newInstance(...) method for" +
-                        " proper instantiation.")
-            }
-            val pSelTags = arguments!!.getParcelableArray(TaggerActivity.ARG_SELECTED_TAGS)
-            if (pSelTags != null && pSelTags.size > 0) {
-                for (p in pSelTags) {
-                    if (p !is ITag) {
-                        throw ClassCastException("Invalid Array of Selected Tags. " + "The tags MUST extend ITag!")
-                    }
-                    selectedTags.add(p)
-                }
-            }
-        } else {
-            val pSelList = savedInstanceState.getParcelableArray(TaggerActivity.ARG_SELECTED_TAGS)
-            if (pSelList != null && pSelList.size > 0) {
-                for (p in pSelList) {
-                    selectedTags.add(p as ITag)
-                }
-            }
+        if (arguments == null) {
+            throw IllegalArgumentException("Selected Tags must be included in" +
+                    " the arguments for this fragment. Please use the newInstance(...) method for" +
+                    " proper instantiation.")
+        }
+        var selection = mSelection
+        if (selection == null) {
+            val owner = activity as? TagSelection.Owner
+            mOwnsSelection = owner == null
+            selection = owner?.tagSelection
+                    ?: TagSetStore.createSelection(arguments!!, savedInstanceState, null)
+            mSelection = selection
         }
-        mAdapter = TagChipsAdapter(selectedTags, this)
+        mAdapter = TagChipsAdapter(selection, this)
         layout.adapter = mAdapter
 
         return v
     }
 
+    /**
+     * Only the ids of the selected tags are saved, and only if this fragment owns the
+     * selection. The tags are looked up again if this instance is recreated.
+     */
     override fun onSaveInstanceState(outState: Bundle) {
-        val selectedTags = mAdapter!!.selectedTags
-        if (selectedTags.size > 0) {
-            outState.putParcelableArray(TaggerActivity.ARG_SELECTED_TAGS,
-                    selectedTags.toTypedArray())
+        val selection = mSelection
+        if (mOwnsSelection && selection != null) {
+            outState.putIntArray(TaggerActivity.ARG_SELECTED_TAG_IDS, tagIds(selection.tags))
         }
         super.onSaveInstanceState(outState)
     }
@@ -141,10 +155,23 @@ class TagChipsFragment : Fragment(), TagChipView.TagChipListener, SearchView.OnQ
     }
 
     override fun onDestroyView() {
+        mAdapter?.release()
         mAdapter = null
         super.onDestroyView()
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    override fun onDestroy() {
+        //
+        // Release the tags stored by newInstance(List).
+        if (arguments?.getBoolean(ARG_OWNS_TAG_SETS) == true) {
+            TagSetStore.remove(arguments!!.getLong(TaggerActivity.ARG_SELECTED_TAGS_HANDLE))
+        }
+        super.onDestroy()
+    }
+
     /**
      * Add a tag to the selected tags.
      * @param tag The tag to be added to the selected tags list.
@@ -161,6 +188,22 @@ class TagChipsFragment : Fragment(), TagChipView.TagChipListener, SearchView.OnQ
         mAdapter!!.remove(tag)
     }
 
+    /**
+     * Add several tags to the selected tags at once.
+     * @param tags The tags to be added to the selected tags list.
+     */
+    fun addTags(tags: List<ITag>) {
+        mAdapter!!.addAll(tags)
+    }
+
+    /**
+     * Remove several tags from the selected tags at once.
+     * @param tags The tags to be removed from selected tags.
+     */
+    fun removeTags(tags: List<ITag>) {
+        mAdapter!!.removeAll(tags)
+    }
+
     //region Filtering
     /**
      * {@inheritDoc}
@@ -173,7 +216,7 @@ class TagChipsFragment : Fragment(), TagChipView.TagChipListener, SearchView.OnQ
      * {@inheritDoc}
      */
     override fun onQueryTextChange(newText: String): Boolean {
-        mAdapter!!.filter.filter(newText)
+        mAdapter!!.filterTags(newText)
         return true
     }
     //endregion
@@ -0,0 +1,69 @@
+package com.amandariu.tagger
+
+import android.support.v7.util.DiffUtil
+
+/**
+ * [DiffUtil.Callback] for comparing two lists of [ITag]s. Tags are the same item when their ids
+ * match, and have the same contents when their label and color match.
+ *
+ * Use [calculateDiff] off the main thread, then dispatch the result to the adapter once the
+ * new list has been swapped in.
+ *
+ * @author Amanda Riu
+ */
+class TagDiffCallback(private val mOldTags: List<ITag>,
+                      private val mNewTags: List<ITag>) : DiffUtil.Callback() {
+
+    companion object {
+        /**
+         * Upper bound on the work [DiffUtil] is allowed to do. Its cost grows with the list size
+         * times the number of edits, so replacing most of a very large list (for example
+         * clearing a filter over 50k tags) is cheaper as a full refresh.
+         */
+        private const val MAX_DIFF_WORK = 4000000L
+
+        /**
+         * Calculate the updates needed to turn [oldTags] into [newTags]. Both lists are
+         * expected to be in the same order, so moves are not detected.
+         *
+         * @param oldTags The list currently displayed by the adapter.
+         * @param newTags The list about to be displayed.
+         * @return The diff result, or null if the lists differ too much for a diff to be worth
+         * calculating and the adapter should be refreshed completely instead.
+         */
+        @JvmStatic
+        fun calculateDiff(oldTags: List<ITag>, newTags: List<ITag>): DiffUtil.DiffResult? {
+            val minEdits = Math.abs(oldTags.size - newTags.size).toLong()
+            if (minEdits * (oldTags.size + newTags.size) > MAX_DIFF_WORK) {
+                return null
+            }
+            return DiffUtil.calculateDiff(TagDiffCallback(oldTags, newTags), false)
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    override fun getOldListSize(): Int = mOldTags.size
+
+    /**
+     * {@inheritDoc}
+     */
+    override fun getNewListSize(): Int = mNewTags.size
+
+    /**
+     * {@inheritDoc}
+     */
+    override fun areItemsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+        return mOldTags[oldItemPosition].id == mNewTags[newItemPosition].id
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    override fun areContentsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+        val oldTag = mOldTags[oldItemPosition]
+        val newTag = mNewTags[newItemPosition]
+        return oldTag.label == newTag.label && oldTag.color == newTag.color
+    }
+}
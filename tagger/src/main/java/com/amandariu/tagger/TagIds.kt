@@ -0,0 +1,36 @@
+package com.amandariu.tagger
+
+import java.util.HashMap
+
+/**
+ * Collects the ids of a list of tags, so a selection can be saved without parceling the tags.
+ */
+fun tagIds(tags: List<ITag>): IntArray {
+    return IntArray(tags.size) { tags[it].id }
+}
+
+/**
+ * Finds the tags with the provided ids, for restoring a selection saved with [tagIds].
+ *
+ * @param ids The ids to find.
+ * @param tags The tags to search, usually the whole catalog.
+ * @return The tags found, in the order of [ids]. Ids without a tag are skipped.
+ */
+fun findTagsById(ids: IntArray, tags: List<ITag>): List<ITag> {
+    val positions = HashMap<Int, Int>(ids.size * 2)
+    for (i in ids.indices) {
+        positions[ids[i]] = i
+    }
+    val found = arrayOfNulls<ITag>(ids.size)
+    var remaining = ids.size
+    for (tag in tags) {
+        val pos = positions[tag.id] ?: continue
+        if (found[pos] == null) {
+            found[pos] = tag
+            if (--remaining == 0) {
+                break
+            }
+        }
+    }
+    return found.filterNotNull()
+}
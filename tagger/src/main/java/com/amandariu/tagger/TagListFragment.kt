@@ -2,7 +2,6 @@ package com.amandariu.tagger
 
 import android.content.Context
 import android.os.Bundle
-import android.os.Parcelable
 import android.support.v4.app.Fragment
 import android.support.v7.widget.LinearLayoutManager
 import android.support.v7.widget.RecyclerView
@@ -45,21 +44,68 @@ class TagListFragment : Fragment(), SearchView.OnQueryTextListener {
          */
         fun newInstance(availTags: List<ITag>,
                         selectedTags: List<ITag>): TagListFragment {
+            val fragment = newInstance(TagSetStore.put(ArrayList(availTags)),
+                    TagSetStore.put(ArrayList(selectedTags)))
+            fragment.arguments!!.putBoolean(ARG_OWNS_TAG_SETS, true)
+            return fragment
+        }
+
+        /**
+         * Creates a new instance of this Fragment class for tags held in the [TagSetStore].
+         *
+         * @param availTagsHandle The handle of all Tags available for selection.
+         * @param selectedTagsHandle The handle of the selected Tags.
+         * @return A properly initialized [TagListFragment].
+         */
+        internal fun newInstance(availTagsHandle: Long,
+                                 selectedTagsHandle: Long): TagListFragment {
+            val fragment = TagListFragment()
+            val args = Bundle()
+            args.putLong(TaggerActivity.ARG_AVAILABLE_TAGS_HANDLE, availTagsHandle)
+            args.putLong(TaggerActivity.ARG_SELECTED_TAGS_HANDLE, selectedTagsHandle)
+            fragment.arguments = args
+            return fragment
+        }
+
+        /**
+         * Creates a new instance of this Fragment class that loads the available tags a page
+         * at a time from the [ITagPageSource] supplied by the application.
+         *
+         * @param selectedTags A list containing only the selected Tags.
+         * @return A properly initialized [TagListFragment].
+         */
+        fun newPagedInstance(selectedTags: List<ITag>): TagListFragment {
+            val fragment = newPagedInstance(TagSetStore.put(ArrayList(selectedTags)))
+            fragment.arguments!!.putBoolean(ARG_OWNS_TAG_SETS, true)
+            return fragment
+        }
+
+        /**
+         * Creates a new paged instance of this Fragment class for selected tags held in the
+         * [TagSetStore].
+         *
+         * @param selectedTagsHandle The handle of the selected Tags.
+         * @return A properly initialized [TagListFragment].
+         */
+        internal fun newPagedInstance(selectedTagsHandle: Long): TagListFragment {
             val fragment = TagListFragment()
             val args = Bundle()
-            args.putParcelableArray(
-                    TaggerActivity.ARG_AVAILABLE_TAGS,
-                    availTags.toTypedArray())
-            args.putParcelableArray(
-                    TaggerActivity.ARG_SELECTED_TAGS,
-                    selectedTags.toTypedArray())
+            args.putBoolean(TaggerActivity.ARG_PAGED_AVAILABLE_TAGS, true)
+            args.putLong(TaggerActivity.ARG_SELECTED_TAGS_HANDLE, selectedTagsHandle)
             fragment.arguments = args
             return fragment
         }
+
+        private val ARG_OWNS_TAG_SETS = "com.amandariu.tagger.LIST-OWNS-TAG-SETS"
     }
 
     private var mListener: TagListFragmentListener? = null
     private var mAdapter: TagsListAdapter? = null
+    //
+    // Shared with the activity if it is a TagSelection.Owner, else owned by this fragment.
+    // Kept while the fragment is retained.
+    private var mSelection: TagSelection? = null
+    private var mOwnsSelection = false
 
     /**
      * @return The active list of selected tags.
@@ -71,6 +117,13 @@ class TagListFragment : Fragment(), SearchView.OnQueryTextListener {
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         retainInstance = true
+        //
+        // The sets stored by newInstance(List, List) or newPagedInstance(List) are released
+        // in onDestroy.
+        if (arguments?.getBoolean(ARG_OWNS_TAG_SETS) == true) {
+            TagSetStore.claim(arguments!!.getLong(TaggerActivity.ARG_AVAILABLE_TAGS_HANDLE))
+            TagSetStore.claim(arguments!!.getLong(TaggerActivity.ARG_SELECTED_TAGS_HANDLE))
+        }
     }
 
     /**
@@ -82,46 +135,38 @@ class TagListFragment : Fragment(), SearchView.OnQueryTextListener {
         val view = inflater.inflate(R.layout.fragment_tag_list, container, false)
         val context = view.context
 
-        val selectedTags = ArrayList<ITag>()
-        val availableTags = ArrayList<ITag>()
-        val pSelTags: Array<Parcelable>?
-        val pAvaTags: Array<Parcelable>?
-
-        if (savedInstanceState == null) {
-            if (arguments == null) {
-                throw IllegalArgumentException("Selected and Available Tags must be included in" +
-                        " the arguments for this fragment. Please use the newInstance(...) method for" +
-                        " instantiation.")
-            }
-            pSelTags = arguments!!.getParcelableArray(TaggerActivity.ARG_SELECTED_TAGS)
-            pAvaTags = arguments!!.getParcelableArray(TaggerActivity.ARG_AVAILABLE_TAGS)
+        if (arguments == null) {
+            throw IllegalArgumentException("Selected and Available Tags must be included in" +
+                    " the arguments for this fragment. Please use the newInstance(...) method for" +
+                    " instantiation.")
+        }
+        val paged = arguments!!.getBoolean(TaggerActivity.ARG_PAGED_AVAILABLE_TAGS)
+        val pageSource = if (paged) {
+            val provider = activity!!.application as? ITagPageSource.Provider
+            provider?.getTagPageSource() ?: throw IllegalStateException(
+                    "Paged available tags require the Application to implement" +
+                            " ITagPageSource.Provider and return a page source.")
         } else {
-            pSelTags = savedInstanceState.getParcelableArray(TaggerActivity.ARG_SELECTED_TAGS)
-            pAvaTags = savedInstanceState.getParcelableArray(TaggerActivity.ARG_AVAILABLE_TAGS)
+            null
         }
-        //
-        // Populate Selected Tags
-        if (pSelTags != null && pSelTags.size > 0) {
-            for (p in pSelTags) {
-                if (p !is ITag) {
-                    throw ClassCastException("Invalid Array of Selected Tags. " +
-                            "The tags MUST extend ITag!")
-                }
-                selectedTags.add(p)
-            }
+        var selection = mSelection
+        if (selection == null) {
+            val owner = activity as? TagSelection.Owner
+            mOwnsSelection = owner == null
+            selection = owner?.tagSelection
+                    ?: TagSetStore.createSelection(arguments!!, savedInstanceState, pageSource)
+            mSelection = selection
         }
         //
-        // Populate Available Tags
-        if (pAvaTags != null && pAvaTags.size > 0) {
-            for (p in pAvaTags) {
-                if (p !is ITag) {
-                    throw ClassCastException("Invalid Array of Available Tags. "
-                            + "The tags MUST extend ITag!")
-                }
-                availableTags.add(p)
-            }
+        // The available tags never change, so they are read from the store rather than
+        // saved with the instance state. The adapter sorts them in place, hence the copy.
+        val availableTags = ArrayList<ITag>(TagSetStore.fromBundle(arguments!!,
+                TaggerActivity.ARG_AVAILABLE_TAGS_HANDLE))
+        if (pageSource != null) {
+            mAdapter = TagsListAdapter(pageSource, selection, mListener)
+        } else {
+            mAdapter = TagsListAdapter(availableTags, selection, mListener)
         }
-        mAdapter = TagsListAdapter(availableTags, selectedTags, mListener)
         val recyclerView = view.findViewById<RecyclerView>(R.id.list)
         recyclerView.layoutManager = LinearLayoutManager(context)
         recyclerView.adapter = mAdapter
@@ -129,15 +174,16 @@ class TagListFragment : Fragment(), SearchView.OnQueryTextListener {
         return view
     }
 
+    /**
+     * Only the ids of the selected tags are saved, and only if this fragment owns the
+     * selection. The available tags are never saved, they stay in the [TagSetStore] or the
+     * page source.
+     */
     override fun onSaveInstanceState(outState: Bundle) {
-        val selectedTags = mAdapter!!.selectedTags
-        val availTags = mAdapter!!.availableTags
-        if (selectedTags.size > 0) {
-            outState.putParcelableArray(TaggerActivity.ARG_SELECTED_TAGS,
-                    selectedTags.toTypedArray())
+        val selection = mSelection
+        if (mOwnsSelection && selection != null) {
+            outState.putIntArray(TaggerActivity.ARG_SELECTED_TAG_IDS, tagIds(selection.tags))
         }
-        outState.putParcelableArray(TaggerActivity.ARG_AVAILABLE_TAGS,
-                availTags.toTypedArray())
         super.onSaveInstanceState(outState)
     }
 
@@ -169,11 +215,55 @@ class TagListFragment : Fragment(), SearchView.OnQueryTextListener {
         mAdapter!!.deselectTag(tag)
     }
 
+    /**
+     * Select every available tag matching the current search.
+     */
+    fun selectAllMatching() {
+        mAdapter!!.selectAllMatching()
+    }
+
+    /**
+     * Select several tags at once.
+     * @param tags The tags to select.
+     */
+    fun selectTags(tags: List<ITag>) {
+        mAdapter!!.selectTags(tags)
+    }
+
+    /**
+     * Deselect several tags at once.
+     * @param tags The tags to deselect.
+     */
+    fun deselectTags(tags: List<ITag>) {
+        mAdapter!!.deselectTags(tags)
+    }
+
+    /**
+     * Deselect every tag.
+     */
+    fun clearSelection() {
+        mAdapter!!.clearSelection()
+    }
+
     override fun onDestroyView() {
+        mAdapter?.release()
         mAdapter = null
         super.onDestroyView()
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    override fun onDestroy() {
+        //
+        // Release the tags stored by newInstance(List, List) or newPagedInstance(List).
+        if (arguments?.getBoolean(ARG_OWNS_TAG_SETS) == true) {
+            TagSetStore.remove(arguments!!.getLong(TaggerActivity.ARG_AVAILABLE_TAGS_HANDLE))
+            TagSetStore.remove(arguments!!.getLong(TaggerActivity.ARG_SELECTED_TAGS_HANDLE))
+        }
+        super.onDestroy()
+    }
+
     //region Filtering
     /**
      * {@inheritDoc}
@@ -186,7 +276,7 @@ class TagListFragment : Fragment(), SearchView.OnQueryTextListener {
      * {@inheritDoc}
      */
     override fun onQueryTextChange(newText: String): Boolean {
-        mAdapter!!.filter.filter(newText)
+        mAdapter!!.filterTags(newText)
         return true
     }
     //endregion
@@ -208,5 +298,15 @@ class TagListFragment : Fragment(), SearchView.OnQueryTextListener {
          * @param tag The newly de-selected [ITag].
          */
         fun onTagDeselected(tag: ITag)
+
+        /**
+         * Notifies listeners several Tags were selected or de-selected at once, for example
+         * by [TagListFragment.selectAllMatching] or [TagListFragment.clearSelection]. Does
+         * nothing unless overridden.
+         * @param added The newly selected [ITag]s.
+         * @param removed The newly de-selected [ITag]s.
+         */
+        fun onTagsSelectionChanged(added: List<ITag>, removed: List<ITag>) {
+        }
     }
 }
@@ -0,0 +1,299 @@
+package com.amandariu.tagger
+
+import java.text.Normalizer
+import java.util.ArrayList
+import java.util.Arrays
+import java.util.Collections
+import java.util.HashMap
+import java.util.Locale
+import java.util.regex.Pattern
+
+/**
+ * In-memory search index for filtering [ITag]s by label.
+ *
+ * Each label is normalized once when the tag is added, and every distinct 1, 2 and 3 character
+ * gram of the normalized label is recorded in a posting list. A "label contains query" lookup
+ * then only walks the posting list of the rarest gram in the query instead of the whole catalog,
+ * so the cost of a search is roughly the size of its result set.
+ *
+ * Removing a tag only clears its slot. The posting lists are compacted once more than half of
+ * the slots are dead.
+ *
+ * All public methods are synchronized since the index is read from the [android.widget.Filter]
+ * worker thread and updated from the main thread.
+ *
+ * @author Amanda Riu
+ */
+internal class TagSearchIndex(tags: Collection<ITag>) {
+
+    companion object {
+        private const val MAX_GRAM_LENGTH = 3
+        private const val INITIAL_CAPACITY = 16
+
+        private val COMBINING_MARKS = Pattern.compile("\\p{Mn}+")
+
+        /**
+         * Normalizes a label or query so they can be compared with a simple [String.contains].
+         * The text is lowercased and accents are removed, so "Café" contains "cafe". An
+         * [ITagPageSource] should match its labels the same way, so a search finds the same
+         * tags whether or not the list is paged.
+         */
+        @JvmStatic
+        fun normalize(text: CharSequence): String {
+            val key = text.toString().toLowerCase(Locale.ROOT)
+            for (i in 0 until key.length) {
+                if (key[i].toInt() >= 128) {
+                    //
+                    // Only text with non-ASCII characters can have accents to fold.
+                    val decomposed = Normalizer.normalize(key, Normalizer.Form.NFD)
+                    return COMBINING_MARKS.matcher(decomposed).replaceAll("")
+                }
+            }
+            return key
+        }
+
+        /**
+         * Packs the gram of [length] characters starting at [start] into a single key. Each char
+         * takes 16 bits and the gram length is stored in the top bits so grams of different
+         * lengths never collide.
+         */
+        private fun gramKey(text: String, start: Int, length: Int): Long {
+            var key = length.toLong()
+            for (i in start until start + length) {
+                key = (key shl 16) or text[i].toLong()
+            }
+            return key
+        }
+    }
+
+    /**
+     * A growable list of slot numbers for a single gram.
+     */
+    private class Postings {
+        var slots = IntArray(4)
+        var size = 0
+
+        fun add(slot: Int) {
+            if (size == slots.size) {
+                slots = Arrays.copyOf(slots, size * 2)
+            }
+            slots[size++] = slot
+        }
+    }
+
+    private var mTags = arrayOfNulls<ITag>(INITIAL_CAPACITY)
+    private var mKeys = arrayOfNulls<String>(INITIAL_CAPACITY)
+    private var mSlotCount = 0
+    private var mLiveCount = 0
+    private val mSlotsById = HashMap<Int, Int>()
+    private val mPostings = HashMap<Long, Postings>()
+    //
+    // True while the slots are in sorted order, which lets search results skip sorting.
+    private var mInOrder = true
+
+    init {
+        for (tag in tags) {
+            add(tag)
+        }
+    }
+
+    /**
+     * @return The number of tags in the index.
+     */
+    val size: Int
+        @Synchronized get() = mLiveCount
+
+    /**
+     * Add a tag to the index. Adding a tag that is already indexed replaces the previous entry.
+     * @param tag The tag to index.
+     */
+    @Synchronized
+    fun add(tag: ITag) {
+        removeSlot(tag.id)
+        ensureCapacity(mSlotCount + 1)
+
+        if (mInOrder && mSlotCount > 0) {
+            val last = lastLiveTag()
+            if (last != null && last > tag) {
+                mInOrder = false
+            }
+        }
+        val slot = mSlotCount++
+        val key = normalize(tag.label)
+        mTags[slot] = tag
+        mKeys[slot] = key
+        mSlotsById[tag.id] = slot
+        mLiveCount++
+        indexSlot(slot, key)
+    }
+
+    /**
+     * Remove a tag from the index.
+     * @param tag The tag to remove.
+     */
+    @Synchronized
+    fun remove(tag: ITag) {
+        if (removeSlot(tag.id) && mLiveCount < (mSlotCount shr 1)) {
+            compact()
+        }
+    }
+
+    /**
+     * Find all tags whose label contains the provided query, ignoring case.
+     * @param query The text to search for.
+     * @param isCancelled Polled while scanning. Returning true aborts the search.
+     * @return The matching tags in alphabetical order, or null if the search was cancelled.
+     */
+    @Synchronized
+    @JvmOverloads
+    fun search(query: CharSequence, isCancelled: (() -> Boolean)? = null): MutableList<ITag>? {
+        val q = normalize(query)
+        if (q.isEmpty()) {
+            return allTags()
+        }
+        //
+        // Every gram of the query must be present in a matching label, so the rarest one
+        // bounds the candidate set.
+        val gramLength = Math.min(MAX_GRAM_LENGTH, q.length)
+        var best: Postings? = null
+        for (i in 0..q.length - gramLength) {
+            val postings = mPostings[gramKey(q, i, gramLength)] ?: return ArrayList()
+            if (best == null || postings.size < best.size) {
+                best = postings
+            }
+        }
+        //
+        // Short queries are themselves an indexed gram, so no verification is needed.
+        val exact = q.length <= MAX_GRAM_LENGTH
+        val results = ArrayList<ITag>()
+        for (i in 0 until best!!.size) {
+            if (isCancelled != null && isCancelled()) {
+                return null
+            }
+            val slot = best.slots[i]
+            val tag = mTags[slot] ?: continue
+            if (exact || mKeys[slot]!!.contains(q)) {
+                results.add(tag)
+            }
+        }
+        if (!mInOrder) {
+            Collections.sort(results)
+        }
+        return results
+    }
+
+    /**
+     * Narrow the results of a previous search down to the tags whose label contains the
+     * provided query. Only valid when [query] contains the query that produced [candidates],
+     * since every match must then already be one of the candidates.
+     * @param candidates The results of the previous search, in alphabetical order.
+     * @param query The extended query.
+     * @param isCancelled Polled while scanning. Returning true aborts the search.
+     * @return The matching tags in alphabetical order, or null if the search was cancelled.
+     */
+    @Synchronized
+    @JvmOverloads
+    fun refine(candidates: List<ITag>,
+               query: CharSequence,
+               isCancelled: (() -> Boolean)? = null): MutableList<ITag>? {
+        val q = normalize(query)
+        val results = ArrayList<ITag>()
+        for (tag in candidates) {
+            if (isCancelled != null && isCancelled()) {
+                return null
+            }
+            val slot = mSlotsById[tag.id] ?: continue
+            if (mKeys[slot]!!.contains(q)) {
+                results.add(tag)
+            }
+        }
+        return results
+    }
+
+    private fun allTags(): MutableList<ITag> {
+        val results = ArrayList<ITag>(mLiveCount)
+        for (i in 0 until mSlotCount) {
+            mTags[i]?.let { results.add(it) }
+        }
+        if (!mInOrder) {
+            Collections.sort(results)
+        }
+        return results
+    }
+
+    private fun lastLiveTag(): ITag? {
+        for (i in mSlotCount - 1 downTo 0) {
+            mTags[i]?.let { return it }
+        }
+        return null
+    }
+
+    private fun removeSlot(id: Int): Boolean {
+        val slot = mSlotsById.remove(id) ?: return false
+        mTags[slot] = null
+        mKeys[slot] = null
+        mLiveCount--
+        return true
+    }
+
+    private fun indexSlot(slot: Int, key: String) {
+        //
+        // Collect every gram up to MAX_GRAM_LENGTH, then sort so each distinct gram is
+        // only posted once for this label.
+        var count = 0
+        for (length in 1..MAX_GRAM_LENGTH) {
+            count += Math.max(0, key.length - length + 1)
+        }
+        val grams = LongArray(count)
+        var n = 0
+        for (length in 1..MAX_GRAM_LENGTH) {
+            for (start in 0..key.length - length) {
+                grams[n++] = gramKey(key, start, length)
+            }
+        }
+        Arrays.sort(grams)
+        for (i in grams.indices) {
+            if (i > 0 && grams[i] == grams[i - 1]) {
+                continue
+            }
+            var postings = mPostings[grams[i]]
+            if (postings == null) {
+                postings = Postings()
+                mPostings[grams[i]] = postings
+            }
+            postings.add(slot)
+        }
+    }
+
+    /**
+     * Rebuild the slots and posting lists without the removed tags.
+     */
+    private fun compact() {
+        val tags = arrayOfNulls<ITag>(Math.max(INITIAL_CAPACITY, mLiveCount))
+        val keys = arrayOfNulls<String>(tags.size)
+        var n = 0
+        for (i in 0 until mSlotCount) {
+            val tag = mTags[i] ?: continue
+            tags[n] = tag
+            keys[n] = mKeys[i]
+            n++
+        }
+        mTags = tags
+        mKeys = keys
+        mSlotCount = n
+        mSlotsById.clear()
+        mPostings.clear()
+        for (slot in 0 until n) {
+            mSlotsById[tags[slot]!!.id] = slot
+            indexSlot(slot, keys[slot]!!)
+        }
+    }
+
+    private fun ensureCapacity(capacity: Int) {
+        if (capacity > mTags.size) {
+            val newSize = Math.max(capacity, mTags.size * 2)
+            mTags = Arrays.copyOf(mTags, newSize)
+            mKeys = Arrays.copyOf(mKeys, newSize)
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.amandariu.tagger
+
+import java.util.ArrayList
+import java.util.Collections
+import java.util.LinkedHashMap
+
+/**
+ * The selected tags, shared by every view that displays or changes the selection.
+ *
+ * Tags are indexed by id, so adding, removing and checking a tag are O(1). Membership is
+ * also kept in an [IntHashSet], so checking a tag, which adapters do on every bind, never
+ * boxes its id. Listeners are
+ * notified with the tags added and removed by each change. Changes made between
+ * [beginBatch] and [endBatch] are merged and dispatched as a single change, and a tag added
+ * and then removed within a batch is not reported at all.
+ *
+ * This class must only be used on the main thread.
+ *
+ * @author Amanda Riu
+ */
+class TagSelection(tags: Collection<ITag> = emptyList()) {
+
+    /**
+     * Notified after the selection changes.
+     */
+    interface Listener {
+        /**
+         * @param added The tags added to the selection, in the order they were added.
+         * @param removed The tags removed from the selection.
+         */
+        fun onSelectionChanged(added: List<ITag>, removed: List<ITag>)
+    }
+
+    /**
+     * Implemented by an activity whose fragments should share a single selection.
+     */
+    interface Owner {
+        /**
+         * @return The selection shared by the activity's fragments.
+         */
+        val tagSelection: TagSelection
+    }
+
+    private val mTags = LinkedHashMap<Int, ITag>(Math.max(16, tags.size * 2))
+    private val mIds = IntHashSet(tags.size)
+    private val mListeners = ArrayList<Listener>()
+    //
+    // Changes not yet dispatched while a batch is open.
+    private var mBatchDepth = 0
+    private val mPendingAdded = LinkedHashMap<Int, ITag>()
+    private val mPendingRemoved = LinkedHashMap<Int, ITag>()
+
+    init {
+        for (tag in tags) {
+            if (mIds.add(tag.id)) {
+                mTags[tag.id] = tag
+            }
+        }
+    }
+
+    /**
+     * @return The number of selected tags.
+     */
+    val size: Int
+        get() = mTags.size
+
+    /**
+     * @return A copy of the selected tags, in the order they were selected.
+     */
+    val tags: List<ITag>
+        get() = ArrayList(mTags.values)
+
+    /**
+     * @return True if the tag is selected.
+     */
+    operator fun contains(tag: ITag): Boolean = mIds.contains(tag.id)
+
+    /**
+     * @return True if the tag with the id is selected.
+     */
+    fun containsId(id: Int): Boolean = mIds.contains(id)
+
+    /**
+     * Select a tag.
+     * @return True if the tag was not already selected.
+     */
+    fun add(tag: ITag): Boolean {
+        if (!mIds.add(tag.id)) {
+            return false
+        }
+        mTags[tag.id] = tag
+        if (mPendingRemoved.remove(tag.id) == null) {
+            mPendingAdded[tag.id] = tag
+        }
+        dispatchIfNotBatching()
+        return true
+    }
+
+    /**
+     * Deselect a tag.
+     * @return True if the tag was selected.
+     */
+    fun remove(tag: ITag): Boolean {
+        if (!mIds.remove(tag.id)) {
+            return false
+        }
+        val removed = mTags.remove(tag.id)!!
+        if (mPendingAdded.remove(tag.id) == null) {
+            mPendingRemoved[tag.id] = removed
+        }
+        dispatchIfNotBatching()
+        return true
+    }
+
+    /**
+     * Select several tags, notifying listeners once.
+     * @return The tags that were not already selected.
+     */
+    fun addAll(tags: Collection<ITag>): List<ITag> {
+        val added = ArrayList<ITag>()
+        beginBatch()
+        try {
+            for (tag in tags) {
+                if (add(tag)) {
+                    added.add(tag)
+                }
+            }
+        } finally {
+            endBatch()
+        }
+        return added
+    }
+
+    /**
+     * Deselect several tags, notifying listeners once.
+     * @return The tags that were selected.
+     */
+    fun removeAll(tags: Collection<ITag>): List<ITag> {
+        val removed = ArrayList<ITag>()
+        beginBatch()
+        try {
+            for (tag in tags) {
+                if (!mIds.contains(tag.id)) {
+                    continue
+                }
+                val selected = mTags[tag.id]!!
+                remove(selected)
+                removed.add(selected)
+            }
+        } finally {
+            endBatch()
+        }
+        return removed
+    }
+
+    /**
+     * Deselect every tag, notifying listeners once.
+     * @return The tags that were selected.
+     */
+    fun clear(): List<ITag> = removeAll(ArrayList(mTags.values))
+
+    /**
+     * Start collecting changes. Listeners are not notified until the matching [endBatch].
+     * Batches may be nested.
+     */
+    fun beginBatch() {
+        mBatchDepth++
+    }
+
+    /**
+     * Finish a batch started with [beginBatch]. Once the outermost batch ends, listeners are
+     * notified once of everything that changed.
+     */
+    fun endBatch() {
+        if (mBatchDepth == 0) {
+            throw IllegalStateException("endBatch() called without beginBatch()")
+        }
+        mBatchDepth--
+        dispatchIfNotBatching()
+    }
+
+    /**
+     * Register a listener.
+     */
+    fun addListener(listener: Listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener)
+        }
+    }
+
+    /**
+     * Unregister a listener.
+     */
+    fun removeListener(listener: Listener) {
+        mListeners.remove(listener)
+    }
+
+    private fun dispatchIfNotBatching() {
+        if (mBatchDepth > 0 || (mPendingAdded.isEmpty() && mPendingRemoved.isEmpty())) {
+            return
+        }
+        val added = snapshot(mPendingAdded)
+        val removed = snapshot(mPendingRemoved)
+        mPendingAdded.clear()
+        mPendingRemoved.clear()
+        //
+        // Iterate over a copy, a listener may unregister itself.
+        for (listener in ArrayList(mListeners)) {
+            listener.onSelectionChanged(added, removed)
+        }
+    }
+
+    private fun snapshot(tags: Map<Int, ITag>): List<ITag> {
+        return if (tags.isEmpty()) Collections.emptyList() else ArrayList(tags.values)
+    }
+}
@@ -0,0 +1,187 @@
+package com.amandariu.tagger
+
+import android.os.Bundle
+import android.util.Log
+
+import java.util.ArrayList
+import java.util.HashMap
+import java.util.LinkedHashSet
+
+/**
+ * Holds sets of tags in memory so they can be passed to [TaggerActivity] and its fragments as
+ * a small handle instead of a parceled array. A large catalog parceled into an intent or
+ * fragment arguments can exceed the 1 MB Binder transaction limit, and is copied again every
+ * time it is unparceled.
+ *
+ * The sets only live as long as the process. A receiver restored after the process was
+ * killed finds its handle missing, unless the set was saved and put back with [restore].
+ *
+ * A set is unclaimed from [put] until its receiver calls [claim], after which the receiver
+ * must [remove] it. Only the [MAX_UNCLAIMED_SETS] most recent unclaimed sets are kept, so the
+ * sets of an intent that is never started, or of a result that is never read, are
+ * eventually released.
+ *
+ * This class is thread safe.
+ *
+ * @author Amanda Riu
+ */
+internal object TagSetStore {
+
+    private val TAG = TagSetStore::class.java.simpleName
+
+    /**
+     * Never returned by [put], so it can mark a missing handle in a [android.os.Bundle].
+     */
+    const val NO_HANDLE = 0L
+    //
+    // Enough for a few intents and results waiting to be delivered at once.
+    private const val MAX_UNCLAIMED_SETS = 8
+
+    private val sSets = HashMap<Long, List<ITag>>()
+    //
+    // Handles of the sets nobody has claimed yet, oldest first.
+    private val sUnclaimed = LinkedHashSet<Long>()
+    private var sNextHandle = 1L
+
+    /**
+     * Store a set of tags.
+     * @param tags The tags to store. The list is not copied, so it must not be changed
+     * afterwards.
+     * @return The handle for reading the tags back.
+     */
+    @Synchronized
+    fun put(tags: List<ITag>): Long {
+        val handle = sNextHandle++
+        sSets[handle] = tags
+        sUnclaimed.add(handle)
+        while (sUnclaimed.size > MAX_UNCLAIMED_SETS) {
+            val oldest = sUnclaimed.iterator().next()
+            sUnclaimed.remove(oldest)
+            sSets.remove(oldest)
+            Log.w(TAG, "Released the unclaimed tags for handle [$oldest]")
+        }
+        return handle
+    }
+
+    /**
+     * Take ownership of a set, so it is kept until [remove] is called.
+     * @param handle The handle returned by [put].
+     */
+    @Synchronized
+    fun claim(handle: Long) {
+        sUnclaimed.remove(handle)
+    }
+
+    /**
+     * Store a set of tags again under the handle it had before the process was killed.
+     * Does nothing if the handle is already in use. The set is already claimed.
+     * @param handle The handle the tags were stored under.
+     * @param tags The tags to store. The list is not copied.
+     */
+    @Synchronized
+    fun restore(handle: Long, tags: List<ITag>) {
+        if (handle == NO_HANDLE || sSets.containsKey(handle)) {
+            return
+        }
+        sSets[handle] = tags
+        sNextHandle = Math.max(sNextHandle, handle + 1)
+    }
+
+    /**
+     * @return The tags stored under a handle, or null if they were released or the process
+     * has restarted since they were stored.
+     */
+    @Synchronized
+    operator fun get(handle: Long): List<ITag>? = sSets[handle]
+
+    /**
+     * Release a set of tags.
+     * @return The tags that were stored under the handle, or null if there were none.
+     */
+    @Synchronized
+    fun remove(handle: Long): List<ITag>? {
+        sUnclaimed.remove(handle)
+        return sSets.remove(handle)
+    }
+
+    /**
+     * Read the tags for a handle stored in a bundle.
+     * @param bundle The bundle holding the handle.
+     * @param key The key of the handle.
+     * @return The tags, or an empty list if there is no handle or its tags are gone.
+     */
+    fun fromBundle(bundle: Bundle, key: String): List<ITag> {
+        val handle = bundle.getLong(key, NO_HANDLE)
+        if (handle == NO_HANDLE) {
+            return emptyList()
+        }
+        val tags = get(handle)
+        if (tags == null) {
+            Log.w(TAG, "The tags for [$key] are no longer available")
+            return emptyList()
+        }
+        return tags
+    }
+
+    /**
+     * Create the selection for a fragment or activity. It holds the selected set whose handle
+     * is in the arguments, unless the selection was saved with the instance state, in which
+     * case the saved ids are looked up with [restoreSelection].
+     *
+     * @param args The arguments holding the tag set handles.
+     * @param savedState The saved instance state, or null.
+     * @param pageSource The source to load tags missing from the stored sets, or null.
+     * @return The selection. Tags loaded from the page source are added to it later.
+     */
+    fun createSelection(args: Bundle, savedState: Bundle?,
+                        pageSource: ITagPageSource?): TagSelection {
+        val savedIds = savedState?.getIntArray(TaggerActivity.ARG_SELECTED_TAG_IDS)
+        if (savedState == null) {
+            return TagSelection(fromBundle(args, TaggerActivity.ARG_SELECTED_TAGS_HANDLE))
+        } else if (savedIds == null) {
+            return TagSelection()
+        }
+        val selection = TagSelection()
+        selection.addAll(restoreSelection(args, savedIds, pageSource) { selection.addAll(it) })
+        return selection
+    }
+
+    /**
+     * Restore a selection that was saved as ids. The ids are looked up in the available and
+     * selected tag sets whose handles are in the arguments. Any not found there are loaded
+     * from the page source, if there is one.
+     *
+     * @param args The arguments of the fragment being restored.
+     * @param ids The ids of the selected tags.
+     * @param pageSource The source to load the remaining tags from, or null.
+     * @param onLoaded Called on the main thread with the tags loaded from the page source.
+     * @return The tags found in the stored sets.
+     */
+    fun restoreSelection(args: Bundle, ids: IntArray, pageSource: ITagPageSource?,
+                         onLoaded: (List<ITag>) -> Unit): List<ITag> {
+        val found = ArrayList<ITag>(ids.size)
+        for (key in arrayOf(TaggerActivity.ARG_AVAILABLE_TAGS_HANDLE,
+                TaggerActivity.ARG_SELECTED_TAGS_HANDLE)) {
+            val tags = get(args.getLong(key, NO_HANDLE)) ?: continue
+            found.addAll(findTagsById(missingIds(ids, found), tags))
+            if (found.size == ids.size) {
+                return found
+            }
+        }
+        if (pageSource != null) {
+            PagedTagList.loadTagsById(pageSource, missingIds(ids, found), onLoaded)
+        }
+        return found
+    }
+
+    private fun missingIds(ids: IntArray, found: List<ITag>): IntArray {
+        if (found.isEmpty()) {
+            return ids
+        }
+        val foundIds = IntHashSet(found.size)
+        for (tag in found) {
+            foundIds.add(tag.id)
+        }
+        return ids.filter { !foundIds.contains(it) }.toIntArray()
+    }
+}
@@ -10,6 +10,7 @@ import android.os.Bundle
 import android.support.annotation.NonNull
 import android.support.v7.widget.SearchView
 import android.view.Menu
+import android.util.Log
 import android.view.MenuItem
 
 import java.util.ArrayList
@@ -32,16 +33,45 @@ import java.util.ArrayList
  * Intent intent = TaggerActivity.createIntent(this, mAvailableTags, mSelectedTags);
  * startActivityForResult(intent, TaggerActivity.REQUEST_CODE);
 ` *
+ * The selected tags are returned to [Activity.onActivityResult] and read with
+ * [.getSelectedTags].
+ *
  * @author Amanda Riu
  */
 class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListener,
-        TagChipsFragment.TagChipsFragmentListener, SearchView.OnQueryTextListener {
+        TagChipsFragment.TagChipsFragmentListener, SearchView.OnQueryTextListener,
+        TagSelection.Owner {
 
     companion object {
+        private val TAG = TaggerActivity::class.java.simpleName
+
+        /**
+         * The selected tags as a `Parcelable[]` in the result, only set when there are at
+         * most [MAX_PARCELED_RESULT_TAGS] of them.
+         */
+        @Deprecated("Read the result with getSelectedTags(Intent), which works for any number" +
+                " of tags.")
         @JvmField val ARG_SELECTED_TAGS = "com.amandariu.tagger.SELECTED-TAGS"
+        /**
+         * No longer read. The available tags are passed by [createIntent].
+         */
+        @Deprecated("Use createIntent(...), the available tags are no longer parceled.")
         @JvmField val ARG_AVAILABLE_TAGS = "com.amandariu.tagger.AVAILABLE-TAGS"
         @JvmField val ARG_TAG_EXTRAS = "com.amandariu.tagger.TAG-EXTRAS"
+        @JvmField val ARG_PAGED_AVAILABLE_TAGS = "com.amandariu.tagger.PAGED-AVAILABLE-TAGS"
+        internal val ARG_AVAILABLE_TAGS_HANDLE = "com.amandariu.tagger.AVAILABLE-TAGS-HANDLE"
+        internal val ARG_SELECTED_TAGS_HANDLE = "com.amandariu.tagger.SELECTED-TAGS-HANDLE"
+        internal val ARG_SELECTED_TAG_IDS = "com.amandariu.tagger.SELECTED-TAG-IDS"
         private val ARG_SEARCH_QUERY_STRING = "com.amandariu.tagger.SEARCH-QUERY-STRING"
+        private val ARG_TAG_SET_HANDLES = "com.amandariu.tagger.TAG-SET-HANDLES"
+        private val ARG_AVAILABLE_TAGS_SNAPSHOT = "com.amandariu.tagger.AVAILABLE-TAGS-SNAPSHOT"
+        //
+        // The most available tags saved with the instance state. Larger sets would risk the
+        // Binder transaction limit.
+        private const val MAX_SAVED_AVAILABLE_TAGS = 2000
+        //
+        // The most selected tags also parceled into the result under ARG_SELECTED_TAGS.
+        const val MAX_PARCELED_RESULT_TAGS = 500
 
         @JvmField val REQUEST_CODE = 1000
 
@@ -49,6 +79,11 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
          * Creates an intent for launching this activity. Using this method ensures the
          * intent is properly initialized with the available and selected tags.
          *
+         * The tags are not parceled into the intent. They are held in memory and the intent
+         * only carries a handle to them, so any number of tags can be passed without hitting
+         * the Binder transaction limit. The intent must therefore be started in the same
+         * process.
+         *
          * @param context The context of the calling Activity.
          * @param availTags The list of available [ITag]s. Cannot be null.
          * @param selectedTags The list of selected [ITag]s. Can be null.
@@ -61,11 +96,46 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
 
             val intent = Intent(context, TaggerActivity::class.java)
             val extras = Bundle()
-            extras.putParcelableArray(
-                    ARG_AVAILABLE_TAGS, availTags.toTypedArray())
+            extras.putLong(ARG_AVAILABLE_TAGS_HANDLE, TagSetStore.put(ArrayList(availTags)))
             if (selectedTags != null) {
-                extras.putParcelableArray(
-                        ARG_SELECTED_TAGS, selectedTags.toTypedArray())
+                extras.putLong(ARG_SELECTED_TAGS_HANDLE, TagSetStore.put(ArrayList(selectedTags)))
+            }
+            intent.putExtra(ARG_TAG_EXTRAS, extras)
+            return intent
+        }
+
+        /**
+         * Get the tags the user selected from the result of this activity. Each result can
+         * only be read once.
+         *
+         * @param data The data returned to [Activity.onActivityResult].
+         * @return The selected tags, or null if the data holds no result.
+         */
+        @JvmStatic
+        fun getSelectedTags(data: Intent?): List<ITag>? {
+            val handle = data?.getLongExtra(ARG_SELECTED_TAGS_HANDLE, TagSetStore.NO_HANDLE)
+                    ?: return null
+            return if (handle == TagSetStore.NO_HANDLE) null else TagSetStore.remove(handle)
+        }
+
+        /**
+         * Creates an intent for launching this activity with the available tags loaded a page
+         * at a time. The application MUST implement [ITagPageSource.Provider], which lets
+         * very large catalogs be displayed without holding them in memory.
+         *
+         * @param context The context of the calling Activity.
+         * @param selectedTags The list of selected [ITag]s. Can be null.
+         * @return The intent to use for launching this activity.
+         */
+        @JvmStatic
+        fun createPagedIntent(@NonNull context: Context,
+                              selectedTags: List<ITag>?): Intent {
+
+            val intent = Intent(context, TaggerActivity::class.java)
+            val extras = Bundle()
+            extras.putBoolean(ARG_PAGED_AVAILABLE_TAGS, true)
+            if (selectedTags != null) {
+                extras.putLong(ARG_SELECTED_TAGS_HANDLE, TagSetStore.put(ArrayList(selectedTags)))
             }
             intent.putExtra(ARG_TAG_EXTRAS, extras)
             return intent
@@ -79,12 +149,38 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
     private var mSearchMenuItem: MenuItem? = null
     private var mSearchQuery: String? = null
     private var mMainHandler: Handler? = null
+    //
+    // The tag sets passed in the intent, released once this activity finishes.
+    private var mTagSetHandles: LongArray? = null
+    //
+    // Shared by both fragments and kept across configuration changes.
+    private var mSelection: TagSelection? = null
+
+    /**
+     * {@inheritDoc}
+     */
+    override val tagSelection: TagSelection
+        get() = mSelection!!
 
     /**
      * {@inheritDoc}
      */
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
+        if (savedInstanceState != null) {
+            restoreTagSets(savedInstanceState)
+            if (!hasTagSets()) {
+                //
+                // The process was killed and the available tags were too many to save, so
+                // there is nothing left to pick from.
+                Log.w(TAG, "The available tags were lost, cancelling")
+                setResult(Activity.RESULT_CANCELED)
+                finish()
+                return
+            }
+        }
+        mSelection = lastCustomNonConfigurationInstance as? TagSelection ?: createSelection(
+                savedInstanceState)
         setContentView(R.layout.activity_tagger)
 
         mMainHandler = Handler()
@@ -101,41 +197,39 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
             }
             val extras = intent.getBundleExtra(ARG_TAG_EXTRAS)
             //
-            // Populate Selected Tags
-            val selectedTags: MutableList<ITag>
-            val pSelTags = extras.getParcelableArray(ARG_SELECTED_TAGS)
-            selectedTags = ArrayList()
-            if (pSelTags != null) {
-                for (p in pSelTags) {
-                    selectedTags.add(p as ITag)
-                }
-            }
+            // The fragments load the tags themselves from the handles in the extras.
+            val selectedHandle = extras.getLong(ARG_SELECTED_TAGS_HANDLE, TagSetStore.NO_HANDLE)
+            val availableHandle = extras.getLong(ARG_AVAILABLE_TAGS_HANDLE, TagSetStore.NO_HANDLE)
+            mTagSetHandles = longArrayOf(selectedHandle, availableHandle)
+            mTagSetHandles!!.forEach { TagSetStore.claim(it) }
             //
-            // Populate Available Tags
-            val pAvaTags = extras.getParcelableArray(ARG_AVAILABLE_TAGS)
-            if (pAvaTags == null || pAvaTags.size == 0) {
+            // Check the Available Tags, unless they are loaded a page at a time.
+            val paged = extras.getBoolean(ARG_PAGED_AVAILABLE_TAGS)
+            if (paged) {
+                if (application !is ITagPageSource.Provider) {
+                    throw IllegalArgumentException("Tagger requires the Application to implement" +
+                            " ITagPageSource.Provider when using" +
+                            " TaggerActivity.createPagedIntent(...).")
+                }
+            } else if (TagSetStore[availableHandle]?.isEmpty() ?: true) {
                 throw IllegalArgumentException("Tagger requires a list of available Tags to" +
                         " work properly. Please use TaggerActivity.createIntent(...) method to ensure" +
                         " all required data is provided.")
             }
-            val availableTags = ArrayList<ITag>()
-            for (p in pAvaTags) {
-                if (p !is ITag) {
-                    throw ClassCastException("Invalid Array of Available Tags. "
-                            + "The tags MUST extend ITag!")
-                }
-                availableTags.add(p)
-            }
             //
             // Selected Tag Chips view
-            mChipsFragment = TagChipsFragment.newInstance(selectedTags)
+            mChipsFragment = TagChipsFragment.newInstance(selectedHandle)
             supportFragmentManager
                     .beginTransaction()
                     .replace(R.id.fragment_tagChips, mChipsFragment, TagChipsFragment.TAG)
                     .commit()
             //
             // Available Tags List view
-            mListFragment = TagListFragment.newInstance(availableTags, selectedTags)
+            mListFragment = if (paged) {
+                TagListFragment.newPagedInstance(selectedHandle)
+            } else {
+                TagListFragment.newInstance(availableHandle, selectedHandle)
+            }
             supportFragmentManager
                     .beginTransaction()
                     .replace(R.id.fragment_tagList, mListFragment, TagListFragment.TAG)
@@ -143,6 +237,7 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
         } else {
             //
             // Restore reference to fragments.
+            mTagSetHandles = savedInstanceState.getLongArray(ARG_TAG_SET_HANDLES)
             mChipsFragment = supportFragmentManager
                     .findFragmentByTag(TagChipsFragment.TAG) as TagChipsFragment
             mListFragment = supportFragmentManager
@@ -156,7 +251,53 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
         }
     }
 
+    /**
+     * Put the available tags saved by [onSaveInstanceState] back in the [TagSetStore] if the
+     * process was killed since, so the fragments find them under their old handle.
+     */
+    private fun restoreTagSets(savedInstanceState: Bundle) {
+        val extras = intent.getBundleExtra(ARG_TAG_EXTRAS) ?: return
+        val handle = extras.getLong(ARG_AVAILABLE_TAGS_HANDLE, TagSetStore.NO_HANDLE)
+        savedInstanceState.classLoader = TagArray::class.java.classLoader
+        val snapshot = savedInstanceState.getParcelable<TagArray>(ARG_AVAILABLE_TAGS_SNAPSHOT)
+        if (snapshot != null && TagSetStore[handle] == null) {
+            TagSetStore.restore(handle, snapshot.tags)
+        }
+    }
+
+    /**
+     * @return False if the available tags are not paged and are no longer in the
+     * [TagSetStore].
+     */
+    private fun hasTagSets(): Boolean {
+        val extras = intent.getBundleExtra(ARG_TAG_EXTRAS) ?: return false
+        val handle = extras.getLong(ARG_AVAILABLE_TAGS_HANDLE, TagSetStore.NO_HANDLE)
+        return extras.getBoolean(ARG_PAGED_AVAILABLE_TAGS) || TagSetStore[handle] != null
+    }
+
+    /**
+     * Create the selection when this activity is first started, or recreated after its
+     * process was killed.
+     */
+    private fun createSelection(savedInstanceState: Bundle?): TagSelection {
+        val extras = intent.getBundleExtra(ARG_TAG_EXTRAS) ?: return TagSelection()
+        val pageSource = if (extras.getBoolean(ARG_PAGED_AVAILABLE_TAGS)) {
+            (application as? ITagPageSource.Provider)?.getTagPageSource()
+        } else {
+            null
+        }
+        return TagSetStore.createSelection(extras, savedInstanceState, pageSource)
+    }
+
+    /**
+     * Keep the selection while this activity is recreated for a configuration change.
+     */
+    override fun onRetainCustomNonConfigurationInstance(): Any? = mSelection
+
     override fun onDestroy() {
+        if (isFinishing) {
+            mTagSetHandles?.forEach { TagSetStore.remove(it) }
+        }
         //
         // Release references
         mChipsFragment = null
@@ -205,6 +346,12 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
         if (item.itemId == R.id.action_close) {
             saveAndClose()
             return true
+        } else if (item.itemId == R.id.action_select_all) {
+            mListFragment?.selectAllMatching()
+            return true
+        } else if (item.itemId == R.id.action_clear_selection) {
+            mListFragment?.clearSelection()
+            return true
         } else if (item.itemId == android.R.id.home) {
             verifyCancel()
             return true
@@ -219,6 +366,19 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
         if (mSearchView!!.isShown) {
             outState!!.putString(ARG_SEARCH_QUERY_STRING, mSearchView!!.query.toString())
         }
+        outState?.putLongArray(ARG_TAG_SET_HANDLES, mTagSetHandles)
+        //
+        // Only the ids are saved. They are looked up again if the process is killed.
+        outState?.putIntArray(ARG_SELECTED_TAG_IDS, tagIds(mSelection!!.tags))
+        //
+        // Small sets of available tags are saved as well, so the picker still has them if the
+        // process is killed.
+        val availableHandle = intent.getBundleExtra(ARG_TAG_EXTRAS)
+                ?.getLong(ARG_AVAILABLE_TAGS_HANDLE, TagSetStore.NO_HANDLE) ?: TagSetStore.NO_HANDLE
+        val availableTags = TagSetStore[availableHandle]
+        if (availableTags != null && availableTags.size <= MAX_SAVED_AVAILABLE_TAGS) {
+            outState?.putParcelable(ARG_AVAILABLE_TAGS_SNAPSHOT, TagArray(availableTags))
+        }
         super.onSaveInstanceState(outState)
     }
 
@@ -254,10 +414,19 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
     /**
      * Grab a list of selected tags and return to the calling Activity.
      */
+    @Suppress("DEPRECATION")
     private fun saveAndClose() {
         val selectedTags = mChipsFragment!!.selectedTags
         val data = Intent()
-        data.putExtra(ARG_SELECTED_TAGS, selectedTags.toTypedArray())
+        //
+        // Read back with getSelectedTags(...).
+        data.putExtra(ARG_SELECTED_TAGS_HANDLE, TagSetStore.put(ArrayList(selectedTags)))
+        //
+        // Callers written before getSelectedTags(...) read the parceled tags, which is only
+        // safe for small results.
+        if (selectedTags.size <= MAX_PARCELED_RESULT_TAGS) {
+            data.putExtra(ARG_SELECTED_TAGS, selectedTags.toTypedArray())
+        }
         setResult(Activity.RESULT_OK, data)
         finish()
     }
@@ -269,10 +438,9 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
      * selected list.
      */
     override fun onTagChipClosed(tag: ITag?) {
+        //
+        // The fragments share the selection, so the list is already up to date.
         mHasChanges = true
-        if (mListFragment != null) {
-            mListFragment!!.deselectTag(tag!!)
-        }
     }
     //endregion
 
@@ -284,9 +452,6 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
      */
     override fun onTagSelected(tag: ITag) {
         mHasChanges = true
-        if (mChipsFragment != null) {
-            mChipsFragment!!.addTag(tag)
-        }
     }
 
     /**
@@ -295,9 +460,15 @@ class TaggerActivity : AppCompatActivity(), TagListFragment.TagListFragmentListe
      */
     override fun onTagDeselected(tag: ITag) {
         mHasChanges = true
-        if (mChipsFragment != null) {
-            mChipsFragment!!.removeTag(tag)
-        }
+    }
+
+    /**
+     * Notifies listeners several Tags were selected or de-selected at once.
+     * @param added The newly selected [ITag]s.
+     * @param removed The newly de-selected [ITag]s.
+     */
+    override fun onTagsSelectionChanged(added: List<ITag>, removed: List<ITag>) {
+        mHasChanges = true
     }
     //endregion
 
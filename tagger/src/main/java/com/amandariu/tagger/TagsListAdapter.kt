@@ -1,6 +1,8 @@
 package com.amandariu.tagger
 
+import android.support.v7.util.DiffUtil
 import android.support.v7.widget.RecyclerView
+import android.util.Log
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
@@ -13,6 +15,7 @@ import com.amandariu.tagger.TagListFragment.TagListFragmentListener
 
 import java.util.ArrayList
 import java.util.Collections
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * [RecyclerView.Adapter] that can display a list of [ITag]s and makes a call to the
@@ -27,14 +30,31 @@ class TagsListAdapter
 /**
  * Constructor.
  * @param availTags A list of available tags.
- * @param mSelectedTags A list of selected tags.
+ * @param mSelection The selected tags. The adapter updates as the selection changes, until
+ * [release] is called.
  * @param mListener The listener to notify when the user toggles selection on an
  * tag in the list of available tags. Can be null.
  */
 internal constructor(availTags: MutableList<ITag>,
-                     private val mSelectedTags: MutableList<ITag>,
+                     private val mSelection: TagSelection,
                      private val mListener: TagListFragmentListener?)
-    : RecyclerView.Adapter<TagsListAdapter.ViewHolder>(), Filterable {
+    : RecyclerView.Adapter<TagsListAdapter.ViewHolder>(), Filterable, TagSelection.Listener {
+
+    companion object {
+        private val TAG = TagsListAdapter::class.java.simpleName
+
+        /**
+         * Rebinds only the check mark of a row, so the row isn't faded out and back in.
+         */
+        private val PAYLOAD_SELECTION = Any()
+        //
+        // Past this many changed tags, refreshing every row is cheaper than finding each one.
+        private const val MAX_ITEM_UPDATES = 50
+        //
+        // The most tags selected at once by selectAllMatching. In paged mode every one of
+        // them is loaded into memory, and all their ids are saved with the instance state.
+        const val MAX_SELECT_ALL = 10000
+    }
 
     /**
      * @return The active list of available tags.
@@ -42,42 +62,159 @@ internal constructor(availTags: MutableList<ITag>,
     val availableTags: List<ITag>
     //
     // Filtering
-    private var mFilteredAvailableTags: MutableList<ITag>? = null
+    private var mFilteredAvailableTags: List<ITag>? = null
     private var mTagFilter: TagFilter? = null
     private var mFilterEnabled = false
+    private val mSearchIndex: TagSearchIndex
+    private val mFilterGeneration = AtomicInteger()
+    @Volatile private var mDiffBase: List<ITag>? = null
+    //
+    // Paging. When the available tags come from a page source, the displayed list is a
+    // PagedTagList and mFilteredAvailableTags is unused.
+    private var mPageSource: ITagPageSource? = null
+    private var mPagedTags: PagedTagList? = null
+    private var mPendingPagedTags: PagedTagList? = null
+    private var mReleased = false
 
     /**
      * @return The active list of selected tags.
      */
     val selectedTags: List<ITag>
-        get() = mSelectedTags
+        get() = mSelection.tags
+
+    /**
+     * Constructor for loading the available tags lazily, a page at a time.
+     * @param pageSource The source of available tags.
+     * @param selection The selected tags.
+     * @param listener The listener to notify when the user toggles selection on an
+     * tag in the list of available tags. Can be null.
+     */
+    internal constructor(pageSource: ITagPageSource,
+                         selection: TagSelection,
+                         listener: TagListFragmentListener?)
+            : this(ArrayList<ITag>(), selection, listener) {
+        mPageSource = pageSource
+        mPagedTags = PagedTagList(pageSource, "", mPageListener).apply { load() }
+    }
+
+    /**
+     * @return True if the available tags are loaded a page at a time.
+     */
+    val isPaged: Boolean
+        get() = mPageSource != null
 
     init {
         Collections.sort(availTags)
         availableTags = availTags
         mFilteredAvailableTags = availTags
+        mSearchIndex = TagSearchIndex(availTags)
+        mSelection.addListener(this)
     }
 
     /**
-     * Updates the state of the provided tag by removing it from teh list of
-     * selected tags and telling this adapter to refresh the state of the view
-     * representing this tag.
+     * Deselect the provided tag. The row displaying it is refreshed once the selection
+     * notifies this adapter.
      * @param tag The tag to deselect.
      */
     fun deselectTag(tag: ITag) {
-        val pos = mFilteredAvailableTags!!.indexOf(tag)
-        if (mSelectedTags.contains(tag)) {
-            mSelectedTags.remove(tag)
-        }
+        mSelection.remove(tag)
+    }
 
-        if (mFilterEnabled) {
-            val filteredPos = mFilteredAvailableTags!!.indexOf(tag)
-            if (filteredPos >= 0) {
-                mFilteredAvailableTags!!.removeAt(filteredPos)
-                notifyItemChanged(filteredPos)
+    /**
+     * Select every available tag matching the current filter, up to [MAX_SELECT_ALL] of them.
+     * The rows are refreshed once and the listener is notified once, however many tags are
+     * selected. In paged mode the matching tags are first loaded from the page source in the
+     * background.
+     */
+    fun selectAllMatching() {
+        val pageSource = mPageSource
+        if (pageSource == null) {
+            val tags = mFilteredAvailableTags!!
+            if (tags.size > MAX_SELECT_ALL) {
+                Log.w(TAG, "Only selecting the first [$MAX_SELECT_ALL] of [${tags.size}] tags")
+                selectTags(tags.subList(0, MAX_SELECT_ALL))
+            } else {
+                selectTags(tags)
             }
+            return
+        }
+        val query = (mPendingPagedTags ?: mPagedTags)?.query ?: ""
+        PagedTagList.loadMatchingTags(pageSource, query, MAX_SELECT_ALL) { tags ->
+            if (!mReleased) {
+                selectTags(tags)
+            }
+        }
+    }
+
+    /**
+     * Select several tags at once. The rows are refreshed once and the listener is notified
+     * once.
+     * @param tags The tags to select.
+     */
+    fun selectTags(tags: Collection<ITag>) {
+        val added = mSelection.addAll(tags)
+        if (added.isNotEmpty()) {
+            mListener?.onTagsSelectionChanged(added, emptyList())
+        }
+    }
+
+    /**
+     * Deselect several tags at once. The rows are refreshed once and the listener is notified
+     * once.
+     * @param tags The tags to deselect.
+     */
+    fun deselectTags(tags: Collection<ITag>) {
+        val removed = mSelection.removeAll(tags)
+        if (removed.isNotEmpty()) {
+            mListener?.onTagsSelectionChanged(emptyList(), removed)
+        }
+    }
+
+    /**
+     * Deselect every tag. The rows are refreshed once and the listener is notified once.
+     */
+    fun clearSelection() {
+        val removed = mSelection.clear()
+        if (removed.isNotEmpty()) {
+            mListener?.onTagsSelectionChanged(emptyList(), removed)
+        }
+    }
+
+    /**
+     * Stop following the selection. Must be called once the adapter is no longer displayed.
+     */
+    internal fun release() {
+        mReleased = true
+        mSelection.removeListener(this)
+        mPagedTags?.close()
+        mPendingPagedTags?.close()
+    }
+
+    /**
+     * Refresh the rows of the tags whose selection changed.
+     */
+    override fun onSelectionChanged(added: List<ITag>, removed: List<ITag>) {
+        if (added.size + removed.size > MAX_ITEM_UPDATES) {
+            notifyDataSetChanged()
+            return
+        }
+        for (tag in added) {
+            notifyTagChanged(tag)
+        }
+        for (tag in removed) {
+            notifyTagChanged(tag)
+        }
+    }
+
+    private fun notifyTagChanged(tag: ITag) {
+        val paged = mPagedTags
+        val pos = if (paged != null) {
+            paged.indexOfLoaded(tag)
         } else {
-            notifyItemChanged(pos)
+            indexOfSortedTag(mFilteredAvailableTags!!, tag)
+        }
+        if (pos >= 0) {
+            notifyItemChanged(pos, PAYLOAD_SELECTION)
         }
     }
 
@@ -90,38 +227,55 @@ internal constructor(availTags: MutableList<ITag>,
         return ViewHolder(view)
     }
 
+    /**
+     * Only updates the check mark when the row is refreshed for a selection change.
+     */
+    override fun onBindViewHolder(holder: ViewHolder, position: Int, payloads: List<Any>) {
+        val tag = holder.mTag
+        if (tag != null && payloads.isNotEmpty() && payloads.all { it === PAYLOAD_SELECTION }) {
+            holder.mImgSelected.visibility = if (isSelected(tag)) View.VISIBLE else View.GONE
+            return
+        }
+        onBindViewHolder(holder, position)
+    }
+
     /**
      * {@inheritDoc}
      */
     override fun onBindViewHolder(holder: ViewHolder, position: Int) {
-        holder.mTag = mFilteredAvailableTags!![position]
+        val paged = mPagedTags
+        holder.mTag = if (paged != null) paged[position] else mFilteredAvailableTags!![position]
+        if (holder.mTag == null) {
+            //
+            // The page holding this tag is still loading.
+            holder.mTxtLabel.text = null
+            holder.mImgSelected.visibility = View.GONE
+            return
+        }
         holder.mTxtLabel.text = holder.mTag!!.label
         //
-        // If this tag exists in the {@link #mSelectedTags}, then set the
+        // If this tag is in the selection, then set the
         // check mark image visible. Else, hide it.
         if (isSelected(holder.mTag!!)) {
             holder.mImgSelected.visibility = View.VISIBLE
         } else {
             holder.mImgSelected.visibility = View.GONE
         }
-        holder.mView.setOnClickListener {
-            if (isSelected(holder.mTag!!)) {
-                //
-                // Tag has been deselected.
-                holder.mImgSelected.visibility = View.GONE
-                holder.mTag?.let {
-                    mSelectedTags.remove(it)
-                    mListener?.onTagDeselected(it)
-                }
-            } else {
-                //
-                // Tag has been selected.
-                holder.mImgSelected.visibility = View.VISIBLE
-                holder.mTag?.let {
-                    mSelectedTags.add(it)
-                    mListener?.onTagSelected(it)
-                }
-            }
+    }
+
+    /**
+     * Toggle the selection of the tag bound to the provided [ViewHolder].
+     * @param holder The row the user clicked.
+     */
+    private fun toggleSelection(holder: ViewHolder) {
+        val tag = holder.mTag ?: return
+        //
+        // The row's check mark is updated when the selection notifies this adapter.
+        if (mSelection.remove(tag)) {
+            mListener?.onTagDeselected(tag)
+        } else {
+            mSelection.add(tag)
+            mListener?.onTagSelected(tag)
         }
     }
 
@@ -129,21 +283,79 @@ internal constructor(availTags: MutableList<ITag>,
      * {@inheritDoc}
      */
     override fun getItemCount(): Int {
-        return mFilteredAvailableTags!!.size
+        val paged = mPagedTags
+        return paged?.size ?: mFilteredAvailableTags!!.size
     }
 
     /**
      * Checks the provided tag against the list of selected tags to determine if
      * the tag is selected.
      * @param tag The tag to check for selection.
-     * @return True if the tag exists in the [.mSelectedTags] lists,
+     * @return True if the tag is in the [mSelection],
      * else false.
      */
     private fun isSelected(tag: ITag): Boolean {
-        return mSelectedTags.contains(tag)
+        return mSelection.containsId(tag.id)
     }
 
     //region Filtering
+    /**
+     * Filter the available tags by label. Prefer this over calling [getFilter] directly since
+     * it also cancels any filtering still running for an older query, and lets the filter
+     * dispatch only the rows that changed instead of refreshing them all.
+     * @param query The text to filter by. Null or empty shows all available tags.
+     */
+    fun filterTags(query: CharSequence?) {
+        val pageSource = mPageSource
+        if (pageSource != null) {
+            filterPagedTags(pageSource, TagSearchIndex.normalize(query ?: ""))
+            return
+        }
+        mFilterGeneration.incrementAndGet()
+        mDiffBase = mFilteredAvailableTags
+        filter.filter(query)
+    }
+
+    /**
+     * Start loading the tags matching the query from the page source. The current list stays
+     * on screen until the new one has its first page.
+     */
+    private fun filterPagedTags(pageSource: ITagPageSource, query: String) {
+        val pending = mPendingPagedTags
+        if ((pending ?: mPagedTags)?.query == query) {
+            return
+        }
+        pending?.close()
+        if (mPagedTags?.query == query) {
+            mPendingPagedTags = null
+            return
+        }
+        mFilterEnabled = query.isNotEmpty()
+        mPendingPagedTags = PagedTagList(pageSource, query, mPageListener).apply { load() }
+    }
+
+    /**
+     * Swaps in filtered lists once they load, and refreshes rows as their pages arrive.
+     */
+    private val mPageListener = object : PagedTagList.Listener {
+        override fun onCountLoaded(list: PagedTagList) {
+            if (list === mPendingPagedTags) {
+                mPagedTags?.close()
+                mPagedTags = list
+                mPendingPagedTags = null
+                notifyDataSetChanged()
+            } else if (list === mPagedTags) {
+                notifyDataSetChanged()
+            }
+        }
+
+        override fun onPageLoaded(list: PagedTagList, start: Int, count: Int) {
+            if (list === mPagedTags && count > 0) {
+                notifyItemRangeChanged(start, count)
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -158,39 +370,87 @@ internal constructor(availTags: MutableList<ITag>,
      * Custom class for implementing filtering by tag label behavior.
      */
     private inner class TagFilter : Filter() {
+        //
+        // The last completed query and its results. When the user keeps typing, the next
+        // query only needs to look at these results. Only accessed on the filter thread.
+        private var mLastQuery: String? = null
+        private var mLastResults: List<ITag>? = null
+
         /**
          * {@inheritDoc}
          */
         override fun performFiltering(constraint: CharSequence?): Filter.FilterResults {
             val filterResults = Filter.FilterResults()
             if (constraint != null && constraint.length > 0) {
-                val tempList = ArrayList<ITag>()
+                val generation = mFilterGeneration.get()
+                val isCancelled = { generation != mFilterGeneration.get() }
 
-                for (tag in availableTags) {
-                    if (tag.label.toLowerCase().contains(constraint.toString().toLowerCase())) {
-                        tempList.add(tag)
-                    }
+                val query = TagSearchIndex.normalize(constraint)
+                val lastQuery = mLastQuery
+                val lastResults = mLastResults
+                val tempList = if (lastQuery != null && lastResults != null
+                        && query.contains(lastQuery)) {
+                    mSearchIndex.refine(lastResults, query, isCancelled)
+                } else {
+                    mSearchIndex.search(query, isCancelled)
+                }
+                if (tempList == null) {
+                    //
+                    // A newer query has already been requested, drop these results.
+                    return filterResults
                 }
-                mFilterEnabled = true
+                mLastQuery = query
+                mLastResults = tempList
                 filterResults.count = tempList.size
-                filterResults.values = tempList
+                filterResults.values = FilterUpdate(tempList, true, diffFromBase(tempList))
             } else {
-                mFilterEnabled = false
+                mLastQuery = null
+                mLastResults = null
                 filterResults.count = availableTags.size
-                filterResults.values = availableTags
+                filterResults.values = FilterUpdate(availableTags, false, diffFromBase(availableTags))
             }
             return filterResults
         }
 
+        /**
+         * Calculate the updates from the displayed list to [newTags]. The displayed list is
+         * only ever replaced, never changed in place, so it is safe to read on this thread.
+         */
+        private fun diffFromBase(newTags: List<ITag>): FilterDiff? {
+            val base = mDiffBase ?: return null
+            val diff = TagDiffCallback.calculateDiff(base, newTags) ?: return null
+            return FilterDiff(base, diff)
+        }
+
         /**
          * {@inheritDoc}
          */
-        @Suppress("UNCHECKED_CAST")
-        override fun publishResults(constraint: CharSequence, results: Filter.FilterResults) {
-            mFilteredAvailableTags = results.values as MutableList<ITag>
-            notifyDataSetChanged()
+        override fun publishResults(constraint: CharSequence?, results: Filter.FilterResults) {
+            val update = results.values as? FilterUpdate ?: return
+            val displayed = mFilteredAvailableTags
+            mFilterEnabled = update.filterEnabled
+            mFilteredAvailableTags = update.tags
+
+            val diff = update.diff
+            if (diff != null && diff.base === displayed) {
+                diff.result.dispatchUpdatesTo(this@TagsListAdapter)
+            } else {
+                notifyDataSetChanged()
+            }
         }
     }
+
+    /**
+     * A diff from a previously displayed list.
+     */
+    private class FilterDiff(val base: List<ITag>, val result: DiffUtil.DiffResult)
+
+    /**
+     * The result of a filter pass along with the updates needed to display it.
+     */
+    private class FilterUpdate(val tags: List<ITag>,
+                               val filterEnabled: Boolean,
+                               val diff: FilterDiff?)
     //endregion
 
     inner class ViewHolder(val mView: View) : RecyclerView.ViewHolder(mView) {
@@ -201,6 +461,7 @@ internal constructor(availTags: MutableList<ITag>,
         init {
             mTxtLabel = mView.findViewById(R.id.txt_label)
             mImgSelected = mView.findViewById(R.id.img_selected)
+            mView.setOnClickListener { toggleSelection(this) }
         }
     }
 }
@@ -2,6 +2,10 @@ package com.amandariu.tagger
 
 import android.content.Context
 import android.graphics.Color
+import android.graphics.drawable.Drawable
+import android.graphics.drawable.GradientDrawable
+import android.util.LruCache
+import java.util.Collections
 
 /**
  * Converts a pixel to a density pixel to match the density of
@@ -12,10 +16,25 @@ fun getDensityPixel(context: Context, dps: Int): Int {
     return (dps * scale + 0.5f).toInt()
 }
 
+/**
+ * Parsed colors keyed by their color string. Most catalogs only use a limited palette,
+ * so this stays small while saving a parse on every lookup.
+ */
+private val sColorCache = LruCache<String, Int>(256)
+
+/**
+ * Chip backgrounds keyed by color. Chips of the same color share the drawable's state.
+ */
+private val sChipBackgrounds = LruCache<Int, Drawable.ConstantState>(64)
+
 /**
  * Converts a string (example: ff335544) into a color int. First it will at
  */
 fun getColorInt(colorString: String): Int {
+    val cached = sColorCache.get(colorString)
+    if (cached != null) {
+        return cached
+    }
     val result: Int
     if (!colorString.startsWith("#")) {
         result = Color.parseColor("#" + colorString)
@@ -23,7 +42,53 @@ fun getColorInt(colorString: String): Int {
         result = Color.parseColor(colorString)
     }
 
-    return if (result == -1) {
+    val color = if (result == -1) {
         -0x99999a
     } else result
+    sColorCache.put(colorString, color)
+    return color
+}
+
+/**
+ * Returns a rounded chip background for the provided color. The underlying state is
+ * shared by every chip of that color.
+ */
+internal fun getChipBackground(context: Context, color: Int): Drawable {
+    var state = sChipBackgrounds.get(color)
+    if (state == null) {
+        val gd = GradientDrawable()
+        gd.setColor(color)
+        gd.cornerRadius = getDensityPixel(context, 16).toFloat()
+        state = gd.constantState!!
+        sChipBackgrounds.put(color, state)
+    }
+    return state.newDrawable(context.resources)
+}
+
+/**
+ * Finds the position of a tag in a list sorted by [ITag.compareTo] using a binary search.
+ * Different tags may share a label, so the tags around the match are checked by id.
+ *
+ * @return The position of the tag, or -1 if it isn't in the list.
+ */
+internal fun indexOfSortedTag(tags: List<ITag>, tag: ITag): Int {
+    val pos = Collections.binarySearch(tags, tag)
+    if (pos < 0) {
+        return -1
+    }
+    var i = pos
+    while (i >= 0 && tags[i].compareTo(tag) == 0) {
+        if (tags[i].id == tag.id) {
+            return i
+        }
+        i--
+    }
+    i = pos + 1
+    while (i < tags.size && tags[i].compareTo(tag) == 0) {
+        if (tags[i].id == tag.id) {
+            return i
+        }
+        i++
+    }
+    return -1
 }
@@ -0,0 +1,53 @@
+package com.amandariu.tagger;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for {@link IntHashSet}.
+ *
+ * @author Amanda Riu
+ */
+public class IntHashSetTest {
+
+    @Test
+    public void addContainsRemove() throws Exception {
+        IntHashSet set = new IntHashSet(4);
+        assertTrue(set.add(0));
+        assertTrue(set.add(-7));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(-7));
+        assertFalse(set.contains(7));
+
+        assertTrue(set.remove(-7));
+        assertFalse(set.remove(-7));
+        assertFalse(set.contains(-7));
+        assertEquals(1, set.getSize());
+    }
+
+    @Test
+    public void matchesHashSetUnderRandomChurn() throws Exception {
+        IntHashSet set = new IntHashSet(16);
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(5000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(key), set.add(key));
+            } else {
+                assertEquals(expected.remove(key), set.remove(key));
+            }
+        }
+        assertEquals(expected.size(), set.getSize());
+        for (int key = 0; key < 5000; key++) {
+            assertEquals(expected.contains(key), set.contains(key));
+        }
+    }
+}
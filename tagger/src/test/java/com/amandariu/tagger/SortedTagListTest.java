@@ -0,0 +1,38 @@
+package com.amandariu.tagger;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests for {@link SortedTagList}.
+ *
+ * @author Amanda Riu
+ */
+public class SortedTagListTest {
+
+    @Test
+    public void insert_keepsAlphabeticalOrder() throws Exception {
+        ITag cherry = new TestTag(3, "cherry");
+        ITag apple = new TestTag(1, "Apple");
+        ITag banana = new TestTag(2, "banana");
+        SortedTagList list = SortedTagList.of(Arrays.asList(cherry, apple));
+
+        assertEquals(1, list.insert(banana));
+        assertEquals(Arrays.asList(apple, banana, cherry), list);
+    }
+
+    @Test
+    public void removeTag_matchesById() throws Exception {
+        ITag first = new TestTag(1, "same");
+        ITag second = new TestTag(2, "Same");
+        SortedTagList list = SortedTagList.of(Arrays.asList(first, second));
+
+        assertEquals(1, list.indexOfTag(second));
+        assertEquals(1, list.removeTag(second));
+        assertEquals(-1, list.removeTag(second));
+        assertEquals(Arrays.asList(first), list);
+    }
+}
@@ -0,0 +1,50 @@
+package com.amandariu.tagger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for saving and restoring a selection by tag id.
+ *
+ * @author Amanda Riu
+ */
+public class TagIdsTest {
+
+    @Test
+    public void tagIds_keepsListOrder() throws Exception {
+        List<ITag> tags = Arrays.<ITag>asList(
+                new TestTag(7, "seven"), new TestTag(2, "two"), new TestTag(5, "five"));
+        assertArrayEquals(new int[]{7, 2, 5}, TagIdsKt.tagIds(tags));
+    }
+
+    @Test
+    public void findTagsById_returnsTagsInIdOrder() throws Exception {
+        List<ITag> catalog = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            catalog.add(new TestTag(i, "tag " + i));
+        }
+        List<ITag> found = TagIdsKt.findTagsById(new int[]{42, 3, 99}, catalog);
+
+        assertEquals(3, found.size());
+        assertEquals(42, found.get(0).getId());
+        assertEquals(3, found.get(1).getId());
+        assertEquals(99, found.get(2).getId());
+    }
+
+    @Test
+    public void findTagsById_skipsMissingIds() throws Exception {
+        List<ITag> catalog = Arrays.<ITag>asList(new TestTag(1, "one"), new TestTag(2, "two"));
+        List<ITag> found = TagIdsKt.findTagsById(new int[]{3, 2, 4}, catalog);
+
+        assertEquals(1, found.size());
+        assertEquals(2, found.get(0).getId());
+        assertTrue(TagIdsKt.findTagsById(new int[0], catalog).isEmpty());
+    }
+}
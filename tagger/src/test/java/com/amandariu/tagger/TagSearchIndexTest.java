@@ -0,0 +1,85 @@
+package com.amandariu.tagger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for {@link TagSearchIndex}.
+ *
+ * @author Amanda Riu
+ */
+public class TagSearchIndexTest {
+
+    private static final ITag APPLE = new TestTag(1, "Apple");
+    private static final ITag BANANA = new TestTag(2, "banana");
+    private static final ITag GRAPE = new TestTag(3, "Grape");
+    private static final ITag PINEAPPLE = new TestTag(4, "Pineapple");
+
+    private TagSearchIndex newIndex() {
+        return new TagSearchIndex(Arrays.asList(APPLE, BANANA, GRAPE, PINEAPPLE));
+    }
+
+    @Test
+    public void search_shortQueryMatchesAnyPosition() throws Exception {
+        assertEquals(Arrays.asList(APPLE, GRAPE, PINEAPPLE), newIndex().search("p"));
+        assertEquals(Arrays.asList(BANANA), newIndex().search("na"));
+    }
+
+    @Test
+    public void search_longQueryIgnoresCase() throws Exception {
+        assertEquals(Arrays.asList(APPLE, PINEAPPLE), newIndex().search("APPLE"));
+        assertTrue(newIndex().search("applesauce").isEmpty());
+    }
+
+    @Test
+    public void search_ignoresAccents() throws Exception {
+        ITag cafe = new TestTag(5, "Caf\u00e9 Cr\u00e8me");
+        TagSearchIndex index = new TagSearchIndex(Arrays.asList(APPLE, cafe));
+        assertEquals(Arrays.asList(cafe), index.search("fe cre"));
+        assertEquals(Arrays.asList(cafe), index.search("CAF\u00c9"));
+        assertEquals("cafe creme", TagSearchIndex.normalize("Caf\u00e9 Cr\u00e8me"));
+    }
+
+    @Test
+    public void search_emptyQueryReturnsAllTags() throws Exception {
+        assertEquals(4, newIndex().search("").size());
+    }
+
+    @Test
+    public void addAndRemove_updateResults() throws Exception {
+        TagSearchIndex index = newIndex();
+        ITag apricot = new TestTag(5, "Apricot");
+        index.add(apricot);
+        assertEquals(Arrays.asList(APPLE, apricot, GRAPE, PINEAPPLE), index.search("ap"));
+
+        index.remove(APPLE);
+        index.remove(PINEAPPLE);
+        index.remove(GRAPE);
+        assertEquals(Arrays.asList(apricot), index.search("ap"));
+        assertEquals(2, index.getSize());
+    }
+
+    @Test
+    public void search_matchesLinearScan() throws Exception {
+        List<ITag> tags = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            tags.add(new TestTag(i, Integer.toString(i * 7919, 36)));
+        }
+        TagSearchIndex index = new TagSearchIndex(tags);
+        for (String query : Arrays.asList("a", "1z", "abc", "k2q9", "zz")) {
+            int expected = 0;
+            for (ITag tag : tags) {
+                if (tag.getLabel().contains(query)) {
+                    expected++;
+                }
+            }
+            assertEquals(query, expected, index.search(query).size());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.amandariu.tagger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for {@link TagSelection}.
+ *
+ * @author Amanda Riu
+ */
+public class TagSelectionTest {
+
+    private TagSelection mSelection;
+    private RecordingListener mListener;
+
+    @Before
+    public void setUp() {
+        mSelection = new TagSelection(Arrays.<ITag>asList(new TestTag(1, "one")));
+        mListener = new RecordingListener();
+        mSelection.addListener(mListener);
+    }
+
+    @Test
+    public void addAndRemove_notifyEachChange() throws Exception {
+        TestTag two = new TestTag(2, "two");
+        assertTrue(mSelection.add(two));
+        assertFalse(mSelection.add(new TestTag(2, "two again")));
+        assertTrue(mSelection.contains(two));
+        assertTrue(mSelection.remove(new TestTag(1, "one")));
+        assertFalse(mSelection.containsId(1));
+
+        assertEquals(2, mListener.mChanges);
+        assertEquals(Arrays.<ITag>asList(two), mListener.mAdded);
+        assertEquals(1, mListener.mRemoved.size());
+        assertEquals(1, mSelection.getSize());
+    }
+
+    @Test
+    public void batch_dispatchesOneChange() throws Exception {
+        List<ITag> tags = new ArrayList<>();
+        for (int i = 10; i < 20; i++) {
+            tags.add(new TestTag(i, "tag " + i));
+        }
+        mSelection.beginBatch();
+        mSelection.addAll(tags);
+        mSelection.remove(new TestTag(1, "one"));
+        assertEquals(0, mListener.mChanges);
+        mSelection.endBatch();
+
+        assertEquals(1, mListener.mChanges);
+        assertEquals(10, mListener.mAdded.size());
+        assertEquals(1, mListener.mRemoved.size());
+        assertEquals(10, mSelection.getSize());
+    }
+
+    @Test
+    public void batch_dropsTagsAddedAndRemovedAgain() throws Exception {
+        TestTag two = new TestTag(2, "two");
+        mSelection.beginBatch();
+        mSelection.add(two);
+        mSelection.remove(two);
+        mSelection.endBatch();
+
+        assertEquals(0, mListener.mChanges);
+        assertEquals(1, mSelection.getSize());
+    }
+
+    @Test
+    public void addAll_returnsOnlyNewTags() throws Exception {
+        List<ITag> added = mSelection.addAll(Arrays.<ITag>asList(new TestTag(1, "one"),
+                new TestTag(2, "two")));
+
+        assertEquals(1, added.size());
+        assertEquals(2, added.get(0).getId());
+        assertEquals(1, mListener.mChanges);
+    }
+
+    @Test
+    public void removeAll_returnsOnlySelectedTags() throws Exception {
+        List<ITag> removed = mSelection.removeAll(Arrays.<ITag>asList(new TestTag(1, "one"),
+                new TestTag(2, "two")));
+
+        assertEquals(1, removed.size());
+        assertEquals(1, removed.get(0).getId());
+        assertEquals(0, mSelection.getSize());
+    }
+
+    @Test
+    public void clear_largeSelection_dispatchesOneChange() throws Exception {
+        List<ITag> tags = new ArrayList<>();
+        for (int i = 10; i < 5010; i++) {
+            tags.add(new TestTag(i, "tag " + i));
+        }
+        mSelection.addAll(tags);
+        List<ITag> removed = mSelection.clear();
+
+        assertEquals(5001, removed.size());
+        assertEquals(2, mListener.mChanges);
+        assertEquals(5001, mListener.mRemoved.size());
+        assertEquals(0, mSelection.getSize());
+    }
+
+    @Test
+    public void clear_empty_doesNotNotify() throws Exception {
+        mSelection.clear();
+        mSelection.clear();
+
+        assertEquals(1, mListener.mChanges);
+    }
+
+    @Test
+    public void containsId_largeIds_tracksAddsAndRemoves() throws Exception {
+        List<ITag> tags = new ArrayList<>();
+        for (int i = 1000; i < 1100; i++) {
+            tags.add(new TestTag(i, "tag " + i));
+        }
+        mSelection.addAll(tags);
+        mSelection.removeAll(tags.subList(0, 50));
+
+        assertFalse(mSelection.containsId(1049));
+        assertTrue(mSelection.containsId(1050));
+        assertTrue(mSelection.contains(new TestTag(1099, "other label")));
+        assertEquals(51, mSelection.getSize());
+        assertEquals(51, mSelection.getTags().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endBatch_withoutBegin_throws() throws Exception {
+        mSelection.endBatch();
+    }
+
+    private static class RecordingListener implements TagSelection.Listener {
+        int mChanges = 0;
+        final List<ITag> mAdded = new ArrayList<>();
+        final List<ITag> mRemoved = new ArrayList<>();
+
+        @Override
+        public void onSelectionChanged(List<? extends ITag> added, List<? extends ITag> removed) {
+            mChanges++;
+            mAdded.addAll(added);
+            mRemoved.addAll(removed);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.amandariu.tagger;
+
+import android.os.Parcel;
+
+/**
+ * Minimal {@link ITag} implementation for local unit tests.
+ *
+ * @author Amanda Riu
+ */
+class TestTag extends ITag {
+
+    private final int mId;
+    private final String mLabel;
+    private final String mColor;
+
+    TestTag(int id, String label) {
+        this(id, label, "ff0000");
+    }
+
+    TestTag(int id, String label, String color) {
+        mId = id;
+        mLabel = label;
+        mColor = color;
+    }
+
+    @Override
+    public int getId() {
+        return mId;
+    }
+
+    @Override
+    public String getLabel() {
+        return mLabel;
+    }
+
+    @Override
+    public String getColor() {
+        return mColor;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        // not needed for local tests
+    }
+}